@@ -1,6 +1,13 @@
+import cart.Cart;
+import cart.CartLocks;
+import cart.CartStore;
+import cart.CartStores;
+import catalog.PriceCatalog;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -9,47 +16,68 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 @WebServlet(name = "CartServlet", urlPatterns = "/shopping_cart")
 public class CartServlet extends HttpServlet {
-    
+    private static final CartLocks CART_LOCKS = CartLocks.shared();
+    private static final int MAX_PATCH_OPS = 100;
+    /** Largest quantity one request may add or change a line by. */
+    private static final int MAX_QUANTITY = 1000;
+    private static final String QUANTITY_TOO_LARGE = "Quantity too large for movie: ";
+
+    /** One parsed entry of a PATCH {@code ops} list. */
+    private record CartOp(String op, String movieId, String title, int quantity) {
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        // HttpServlet has no PATCH dispatch
+        if ("PATCH".equals(request.getMethod())) {
+            doPatch(request, response);
+        } else {
+            super.service(request, response);
+        }
+    }
+
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
-        
+
         try {
             HttpSession session = request.getSession();
-            String sessionId = session.getId();
-            long lastAccessTime = session.getLastAccessedTime();
-            
-            @SuppressWarnings("unchecked")
-            Map<String, JsonObject> cartItems = (Map<String, JsonObject>) session.getAttribute("cartItems");
-            if (cartItems == null) {
-                cartItems = new HashMap<>();
-            }
-            
-            JsonObject responseJsonObject = new JsonObject();
-            responseJsonObject.addProperty("sessionId", sessionId);
-            responseJsonObject.addProperty("lastAccessTime", new Date(lastAccessTime).toString());
-            
-            JsonArray cartItemsJsonArray = new JsonArray();
-            for (JsonObject movieItem : cartItems.values()) {
-                cartItemsJsonArray.add(movieItem);
-            }
-            responseJsonObject.add("cartItems", cartItemsJsonArray);
 
-            double totalPrice = 0.0;
-            for (JsonObject movieItem : cartItems.values()) {
-                totalPrice += movieItem.get("price").getAsDouble() * movieItem.get("quantity").getAsInt();
+            StringWriter body = new StringWriter();
+            JsonWriter jw = new JsonWriter(body);
+            jw.beginObject();
+            jw.name("sessionId").value(session.getId());
+            jw.name("lastAccessTime").value(new Date(session.getLastAccessedTime()).toString());
+            CartStore store = CartStores.current();
+            String cartId = store.cartId(request, response, false);
+            Cart cart = null;
+            Lock lock = cartId == null ? null : CART_LOCKS.forCart(cartId);
+            if (lock != null) lock.lock();
+            try {
+                if (cartId != null) cart = store.load(request, cartId);
+                if (cart == null) {
+                    cart = new Cart();
+                } else if (repriceFromCatalog(cart)) {
+                    store.save(request, cartId, cart);
+                }
+                writeCart(jw, cart);
+                System.out.println("Getting " + cart.size() + " cart items");
+            } finally {
+                if (lock != null) lock.unlock();
             }
-            responseJsonObject.addProperty("totalPrice", totalPrice);
-            
-            System.out.println("Getting " + cartItems.size() + " cart items");
-            response.getWriter().write(responseJsonObject.toString());
-            
+            jw.endObject();
+            jw.flush();
+
+            response.getWriter().write(body.toString());
+
         } catch (Exception e) {
             JsonObject errorResponse = new JsonObject();
             errorResponse.addProperty("error", "Failed to get cart items: " + e.getMessage());
@@ -57,11 +85,11 @@ public class CartServlet extends HttpServlet {
             response.getWriter().write(errorResponse.toString());
         }
     }
-    
+
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
-        
+
         try {
             // Read JSON request body
             StringBuilder jsonBuffer = new StringBuilder();
@@ -69,12 +97,12 @@ public class CartServlet extends HttpServlet {
             while ((line = request.getReader().readLine()) != null) {
                 jsonBuffer.append(line);
             }
-            
+
             JsonObject requestJson = JsonParser.parseString(jsonBuffer.toString()).getAsJsonObject();
             String movieId = requestJson.get("id").getAsString();
             String movieTitle = requestJson.get("title").getAsString();
-            int quantity = requestJson.get("quantity").getAsInt();
-            
+            long quantity = requestJson.get("quantity").getAsLong(); // range-checked below, then narrowed
+
             if (movieId == null || movieId.trim().isEmpty()) {
                 JsonObject errorResponse = new JsonObject();
                 errorResponse.addProperty("error", "Movie ID is required");
@@ -82,53 +110,63 @@ public class CartServlet extends HttpServlet {
                 response.getWriter().write(errorResponse.toString());
                 return;
             }
-            
-            HttpSession session = request.getSession();
-            
-            @SuppressWarnings("unchecked")
-            Map<String, JsonObject> cartItems = (Map<String, JsonObject>) session.getAttribute("cartItems");
-            if (cartItems == null) {
-                cartItems = new HashMap<>();
-            }
-            
-            JsonObject responseJsonObject = new JsonObject();
-
-            if (cartItems.containsKey(movieId)) {
-                JsonObject existingItem = cartItems.get(movieId);
-                int currentQuantity = existingItem.get("quantity").getAsInt();
-                int newQuantity = currentQuantity + quantity;
-                existingItem.addProperty("quantity", newQuantity);
-                responseJsonObject.addProperty("message", "Movie quantity updated in cart successfully");
-                System.out.println("Updating quantity for movie: " + movieId + " from " + currentQuantity + " to " + newQuantity);
-            } else {
-                JsonObject movieItem = new JsonObject();
-                movieItem.addProperty("id", movieId);
-                movieItem.addProperty("title", movieTitle);
-                movieItem.addProperty("price", 10.0); // Fixed price
-                movieItem.addProperty("quantity", quantity);
-                cartItems.put(movieId, movieItem);
-                responseJsonObject.addProperty("message", "Movie added to cart successfully");
-                System.out.println("Adding movie to cart: " + movieTitle + " (ID: " + movieId + ", Price: $10.0, Qty: " + quantity + ")");
+            if (quantity <= 0 || quantity > MAX_QUANTITY) {
+                JsonObject errorResponse = new JsonObject();
+                errorResponse.addProperty("error", "Quantity must be between 1 and " + MAX_QUANTITY);
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().write(errorResponse.toString());
+                return;
             }
-            
-            // Save the updated cart items back to the session
-            session.setAttribute("cartItems", cartItems);
-            
-            JsonArray cartItemsJsonArray = new JsonArray();
-            for (JsonObject movieItem : cartItems.values()) {
-                cartItemsJsonArray.add(movieItem);
+
+            CartStore store = CartStores.current();
+            String cartId = store.cartId(request, response, true);
+
+            String body = null;
+            String error = null;
+            Lock lock = CART_LOCKS.forCart(cartId);
+            lock.lock();
+            try {
+                Cart cart = store.load(request, cartId);
+                if (cart == null) {
+                    cart = new Cart();
+                }
+                int priceCents = PriceCatalog.current().priceCents(movieId);
+                boolean existed = cart.contains(movieId);
+                int newQuantity;
+                try {
+                    newQuantity = cart.add(movieId, movieTitle, (int) quantity, priceCents);
+                } catch (ArithmeticException e) { // the cart is unchanged
+                    newQuantity = -1;
+                }
+                if (newQuantity < 0) {
+                    error = QUANTITY_TOO_LARGE + movieId;
+                } else {
+                    String message;
+                    if (existed) {
+                        message = "Movie quantity updated in cart successfully";
+                        System.out.println("Updating quantity for movie: " + movieId + " from " + (newQuantity - quantity) + " to " + newQuantity);
+                    } else {
+                        message = "Movie added to cart successfully";
+                        System.out.println("Adding movie to cart: " + movieTitle + " (ID: " + movieId + ", Price: $" + Cart.decimal(priceCents) + ", Qty: " + quantity + ")");
+                    }
+                    repriceFromCatalog(cart);
+                    body = cartResponse(message, cart);
+                    store.save(request, cartId, cart);
+                }
+            } finally {
+                lock.unlock();
             }
-            responseJsonObject.add("cartItems", cartItemsJsonArray);
-            
-            // Calculate total price
-            double totalPrice = 0.0;
-            for (JsonObject movieItem : cartItems.values()) {
-                totalPrice += movieItem.get("price").getAsDouble() * movieItem.get("quantity").getAsInt();
+
+            if (error != null) {
+                JsonObject errorResponse = new JsonObject();
+                errorResponse.addProperty("error", error);
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().write(errorResponse.toString());
+                return;
             }
-            responseJsonObject.addProperty("totalPrice", totalPrice);
-            
-            response.getWriter().write(responseJsonObject.toString());
-            
+
+            response.getWriter().write(body);
+
         } catch (Exception e) {
             JsonObject errorResponse = new JsonObject();
             errorResponse.addProperty("error", "Failed to add item to cart: " + e.getMessage());
@@ -136,11 +174,11 @@ public class CartServlet extends HttpServlet {
             response.getWriter().write(errorResponse.toString());
         }
     }
-    
+
     protected void doPut(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
-        
+
         try {
             // Read JSON request body
             StringBuilder jsonBuffer = new StringBuilder();
@@ -148,11 +186,11 @@ public class CartServlet extends HttpServlet {
             while ((line = request.getReader().readLine()) != null) {
                 jsonBuffer.append(line);
             }
-            
+
             JsonObject requestJson = JsonParser.parseString(jsonBuffer.toString()).getAsJsonObject();
             String movieId = requestJson.get("movieId").getAsString();
             String action = requestJson.get("action").getAsString();
-            
+
             if (movieId == null || movieId.trim().isEmpty()) {
                 JsonObject errorResponse = new JsonObject();
                 errorResponse.addProperty("error", "Movie ID is required");
@@ -160,85 +198,77 @@ public class CartServlet extends HttpServlet {
                 response.getWriter().write(errorResponse.toString());
                 return;
             }
-            
-            HttpSession session = request.getSession();
-            
-            @SuppressWarnings("unchecked")
-            Map<String, JsonObject> cartItems = (Map<String, JsonObject>) session.getAttribute("cartItems");
-            if (cartItems == null) {
+
+            int delta;
+            switch (action) {
+                case "increase" -> delta = 1;
+                case "decrease" -> delta = -1;
+                default -> {
+                    JsonObject errorResponse = new JsonObject();
+                    errorResponse.addProperty("error", "Invalid action. Use 'increase' or 'decrease'");
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    response.getWriter().write(errorResponse.toString());
+                    return;
+                }
+            }
+
+            CartStore store = CartStores.current();
+            String cartId = store.cartId(request, response, false);
+            if (cartId == null) {
                 JsonObject errorResponse = new JsonObject();
                 errorResponse.addProperty("error", "Cart is empty");
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 response.getWriter().write(errorResponse.toString());
                 return;
             }
-            
-            JsonObject responseJsonObject = new JsonObject();
-            boolean itemExists = cartItems.containsKey(movieId);
-            
-            if (!itemExists) {
+
+            String body = null;
+            String error = null;
+            Lock lock = CART_LOCKS.forCart(cartId);
+            lock.lock();
+            try {
+                Cart cart = store.load(request, cartId);
+                int newQuantity;
+                try {
+                    newQuantity = cart == null ? -1 : cart.adjust(movieId, delta);
+                } catch (ArithmeticException e) { // the cart is unchanged
+                    newQuantity = Integer.MIN_VALUE;
+                }
+                if (cart == null) {
+                    error = "Cart is empty";
+                } else if (newQuantity == Integer.MIN_VALUE) {
+                    error = QUANTITY_TOO_LARGE + movieId;
+                } else if (newQuantity < 0) {
+                    error = "Movie not found in cart";
+                } else {
+                    String message;
+                    if (newQuantity == 0) {
+                        message = "Item removed from cart (quantity was 1)";
+                        System.out.println("Removing movie from cart (quantity was 1): " + movieId);
+                    } else if (delta > 0) {
+                        message = "Quantity increased successfully";
+                        System.out.println("Increasing quantity for movie: " + movieId + " from " + (newQuantity - 1) + " to " + newQuantity);
+                    } else {
+                        message = "Quantity decreased successfully";
+                        System.out.println("Decreasing quantity for movie: " + movieId + " from " + (newQuantity + 1) + " to " + newQuantity);
+                    }
+                    repriceFromCatalog(cart);
+                    body = cartResponse(message, cart);
+                    store.save(request, cartId, cart);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (error != null) {
                 JsonObject errorResponse = new JsonObject();
-                errorResponse.addProperty("error", "Movie not found in cart");
+                errorResponse.addProperty("error", error);
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 response.getWriter().write(errorResponse.toString());
                 return;
             }
-            
-            synchronized (cartItems) {
-                JsonObject movieItem = cartItems.get(movieId);
-                int currentQuantity = movieItem.get("quantity").getAsInt();
-                int newQuantity = currentQuantity;
-                
-                switch (action) {
-                    case "increase":
-                        newQuantity = currentQuantity + 1;
-                        responseJsonObject.addProperty("message", "Quantity increased successfully");
-                        System.out.println("Increasing quantity for movie: " + movieId + " from " + currentQuantity + " to " + newQuantity);
-                        break;
-                        
-                    case "decrease":
-                        if (currentQuantity > 1) {
-                            newQuantity = currentQuantity - 1;
-                            responseJsonObject.addProperty("message", "Quantity decreased successfully");
-                            System.out.println("Decreasing quantity for movie: " + movieId + " from " + currentQuantity + " to " + newQuantity);
-                        } else {
-                            // Remove item if quantity would be 0
-                            cartItems.remove(movieId);
-                            responseJsonObject.addProperty("message", "Item removed from cart (quantity was 1)");
-                            System.out.println("Removing movie from cart (quantity was 1): " + movieId);
-                        }
-                        break;
-                        
-                    default:
-                        JsonObject errorResponse = new JsonObject();
-                        errorResponse.addProperty("error", "Invalid action. Use 'increase' or 'decrease'");
-                        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                        response.getWriter().write(errorResponse.toString());
-                        return;
-                }
-                
-                if (newQuantity > 0) {
-                    movieItem.addProperty("quantity", newQuantity);
-                }
-            }
-            
-            // Save the updated cart items back to the session
-            session.setAttribute("cartItems", cartItems);
-            
-            JsonArray cartItemsJsonArray = new JsonArray();
-            for (JsonObject movieItem : cartItems.values()) {
-                cartItemsJsonArray.add(movieItem);
-            }
-            responseJsonObject.add("cartItems", cartItemsJsonArray);
-            
-            // Calculate total price
-            double totalPrice = 0.0;
-            for (JsonObject movieItem : cartItems.values()) {
-                totalPrice += movieItem.get("price").getAsDouble() * movieItem.get("quantity").getAsInt();
-            }
-            responseJsonObject.addProperty("totalPrice", totalPrice);
-            
-            response.getWriter().write(responseJsonObject.toString());
+
+            response.getWriter().write(body);
         } catch (Exception e) {
             JsonObject errorResponse = new JsonObject();
             errorResponse.addProperty("error", "Failed to update cart: " + e.getMessage());
@@ -246,22 +276,12 @@ public class CartServlet extends HttpServlet {
             response.getWriter().write(errorResponse.toString());
         }
     }
-    
+
     protected void doDelete(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
-        
+
         try {
-            HttpSession session = request.getSession();
-            
-            @SuppressWarnings("unchecked")
-            Map<String, JsonObject> cartItems = (Map<String, JsonObject>) session.getAttribute("cartItems");
-            if (cartItems == null) {
-                cartItems = new HashMap<>();
-            }
-            
-            JsonObject responseJsonObject = new JsonObject();
-            
             // Remove specific item
             String movieId = request.getParameter("movieId");
             if (movieId == null || movieId.trim().isEmpty()) {
@@ -271,42 +291,230 @@ public class CartServlet extends HttpServlet {
                 response.getWriter().write(errorResponse.toString());
                 return;
             }
-            
+
+            CartStore store = CartStores.current();
+            String cartId = store.cartId(request, response, false);
+
             System.out.println("Removing movie from cart: " + movieId);
-            
-            boolean removed = false;
-            synchronized (cartItems) {
-                removed = cartItems.remove(movieId) != null;
+
+            String body;
+            Lock lock = cartId == null ? null : CART_LOCKS.forCart(cartId);
+            if (lock != null) lock.lock();
+            try {
+                Cart cart = cartId == null ? null : store.load(request, cartId);
+                boolean removed = cart != null && cart.remove(movieId);
+                boolean repriced = cart != null && repriceFromCatalog(cart);
+                if (removed || repriced) {
+                    store.save(request, cartId, cart);
+                }
+                body = cartResponse(removed ? "Movie removed from cart successfully" : "Movie not found in cart",
+                        cart == null ? new Cart() : cart);
+            } finally {
+                if (lock != null) lock.unlock();
+            }
+
+            response.getWriter().write(body);
+        } catch (Exception e) {
+            JsonObject errorResponse = new JsonObject();
+            errorResponse.addProperty("error", "Failed to remove item from cart: " + e.getMessage());
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            response.getWriter().write(errorResponse.toString());
+        }
+    }
+
+    /**
+     * Applies {@code {"baseVersion": v, "ops": [{"op", "id", "title", "quantity"}, ...]}} as one
+     * change: ops run in order against a copy of the cart, which replaces the stored cart only
+     * if every op applied. {@code op} is add, increase, decrease or remove, and {@code quantity}
+     * (1 to {@value #MAX_QUANTITY}) defaults to 1. When {@code baseVersion} is a version the cart
+     * can diff from, the response lists only the lines changed since then plus removed ids;
+     * otherwise it lists every line.
+     */
+    protected void doPatch(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        try {
+            // Read JSON request body
+            StringBuilder jsonBuffer = new StringBuilder();
+            String line;
+            while ((line = request.getReader().readLine()) != null) {
+                jsonBuffer.append(line);
             }
-            
-            if (removed) {
-                responseJsonObject.addProperty("message", "Movie removed from cart successfully");
-            } else {
-                responseJsonObject.addProperty("message", "Movie not found in cart");
+
+            JsonObject requestJson = JsonParser.parseString(jsonBuffer.toString()).getAsJsonObject();
+            long baseVersion = requestJson.has("baseVersion") && !requestJson.get("baseVersion").isJsonNull()
+                    ? requestJson.get("baseVersion").getAsLong() : -1;
+            JsonArray opsJson = requestJson.has("ops") && requestJson.get("ops").isJsonArray()
+                    ? requestJson.getAsJsonArray("ops") : null;
+
+            if (opsJson == null || opsJson.isEmpty() || opsJson.size() > MAX_PATCH_OPS) {
+                writePatchError(response, "ops must be a list of 1 to " + MAX_PATCH_OPS + " operations", -1);
+                return;
             }
-            
-            // Save the updated cart items back to the session
-            session.setAttribute("cartItems", cartItems);
-            
-            JsonArray cartItemsJsonArray = new JsonArray();
-            for (JsonObject movieItem : cartItems.values()) {
-                cartItemsJsonArray.add(movieItem);
+
+            List<CartOp> ops = new ArrayList<>(opsJson.size());
+            for (int i = 0; i < opsJson.size(); i++) {
+                CartOp op = parseOp(opsJson.get(i));
+                if (op == null) {
+                    writePatchError(response, "Invalid operation; expected {op: add|increase|decrease|remove, id, quantity 1.." + MAX_QUANTITY + "}", i);
+                    return;
+                }
+                ops.add(op);
+            }
+
+            CartStore store = CartStores.current();
+            String cartId = store.cartId(request, response, true);
+
+            String body = null;
+            String error = null;
+            int errorIndex = -1;
+            Lock lock = CART_LOCKS.forCart(cartId);
+            lock.lock();
+            try {
+                Cart current = store.load(request, cartId);
+                Cart next = current == null ? new Cart() : current.copy();
+                for (int i = 0; i < ops.size() && error == null; i++) {
+                    error = apply(next, ops.get(i));
+                    if (error != null) errorIndex = i;
+                }
+                if (error == null) {
+                    repriceFromCatalog(next);
+                    store.save(request, cartId, next);
+                    body = patchResponse(next, baseVersion);
+                    System.out.println("Applied " + ops.size() + " cart operations, version " + next.version());
+                }
+            } finally {
+                lock.unlock();
             }
-            responseJsonObject.add("cartItems", cartItemsJsonArray);
-            
-            // Calculate total price
-            double totalPrice = 0.0;
-            for (JsonObject movieItem : cartItems.values()) {
-                totalPrice += movieItem.get("price").getAsDouble() * movieItem.get("quantity").getAsInt();
+
+            if (error != null) {
+                writePatchError(response, error, errorIndex);
+                return;
             }
-            responseJsonObject.addProperty("totalPrice", totalPrice);
-            
-            response.getWriter().write(responseJsonObject.toString());
+
+            response.getWriter().write(body);
         } catch (Exception e) {
             JsonObject errorResponse = new JsonObject();
-            errorResponse.addProperty("error", "Failed to remove item from cart: " + e.getMessage());
+            errorResponse.addProperty("error", "Failed to update cart: " + e.getMessage());
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             response.getWriter().write(errorResponse.toString());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return null when {@code element} is not a well-formed operation
+     */
+    private static CartOp parseOp(JsonElement element) {
+        if (!element.isJsonObject()) return null;
+        JsonObject o = element.getAsJsonObject();
+        String op;
+        String movieId;
+        String title;
+        long quantity;
+        try {
+            op = o.has("op") ? o.get("op").getAsString() : null;
+            movieId = o.has("id") ? o.get("id").getAsString() : null;
+            title = o.has("title") && !o.get("title").isJsonNull() ? o.get("title").getAsString() : null;
+            quantity = o.has("quantity") ? o.get("quantity").getAsLong() : 1;
+        } catch (RuntimeException e) { // wrong JSON types
+            return null;
+        }
+        if (op == null || movieId == null || movieId.isBlank() || quantity <= 0 || quantity > MAX_QUANTITY) return null;
+        return switch (op) {
+            case "add", "increase", "decrease", "remove" -> new CartOp(op, movieId, title, (int) quantity);
+            default -> null;
+        };
+    }
+
+    /**
+     * @return an error message, or null when the op applied
+     */
+    private static String apply(Cart cart, CartOp op) {
+        try {
+            switch (op.op()) {
+                case "add" -> {
+                    if (op.title() == null && !cart.contains(op.movieId())) {
+                        return "title is required to add movie " + op.movieId();
+                    }
+                    cart.add(op.movieId(), op.title(), op.quantity(), PriceCatalog.current().priceCents(op.movieId()));
+                }
+                case "increase", "decrease" -> {
+                    int delta = op.op().equals("increase") ? op.quantity() : -op.quantity();
+                    if (cart.adjust(op.movieId(), delta) < 0) {
+                        return "Movie not found in cart: " + op.movieId();
+                    }
+                }
+                default -> cart.remove(op.movieId());
+            }
+        } catch (ArithmeticException e) {
+            return QUANTITY_TOO_LARGE + op.movieId();
+        }
+        return null;
+    }
+
+    private static String patchResponse(Cart cart, long baseVersion) throws IOException {
+        StringWriter body = new StringWriter();
+        JsonWriter jw = new JsonWriter(body);
+        jw.beginObject();
+        jw.name("version").value(cart.version());
+        if (baseVersion >= 0 && cart.canDiff(baseVersion)) {
+            jw.name("delta").value(true);
+            jw.name("baseVersion").value(baseVersion);
+            jw.name("cartItems");
+            cart.writeChangedItems(jw, baseVersion);
+            jw.name("removed");
+            cart.writeRemovedIds(jw, baseVersion);
+        } else {
+            jw.name("delta").value(false);
+            jw.name("cartItems");
+            cart.writeItems(jw);
+        }
+        jw.name("totalPrice").jsonValue(Cart.decimal(cart.totalCents()));
+        jw.endObject();
+        jw.flush();
+        return body.toString();
+    }
+
+    private static void writePatchError(HttpServletResponse response, String error, int opIndex) throws IOException {
+        JsonObject errorResponse = new JsonObject();
+        errorResponse.addProperty("error", error);
+        if (opIndex >= 0) {
+            errorResponse.addProperty("opIndex", opIndex);
+        }
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.getWriter().write(errorResponse.toString());
+    }
+
+    /**
+     * {@code {"message", "version", "cartItems", "totalPrice"}}; call while holding the cart's lock.
+     */
+    private static String cartResponse(String message, Cart cart) throws IOException {
+        StringWriter body = new StringWriter();
+        JsonWriter jw = new JsonWriter(body);
+        jw.beginObject();
+        jw.name("message").value(message);
+        writeCart(jw, cart);
+        jw.endObject();
+        jw.flush();
+        return body.toString();
+    }
+
+    /**
+     * Brings line prices in line with the in-memory price snapshot (no query); checkout
+     * re-validates them against the database.
+     *
+     * @return true when a line changed, so the cart needs saving
+     */
+    private static boolean repriceFromCatalog(Cart cart) {
+        PriceCatalog prices = PriceCatalog.current();
+        return prices.isLoaded() && cart.repriceAll(prices::priceCents) > 0;
+    }
+
+    private static void writeCart(JsonWriter jw, Cart cart) throws IOException {
+        jw.name("version").value(cart.version());
+        jw.name("cartItems");
+        cart.writeItems(jw);
+        jw.name("totalPrice").jsonValue(Cart.decimal(cart.totalCents()));
+    }
+}
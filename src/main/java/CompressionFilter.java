@@ -0,0 +1,162 @@
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import utils.Compression;
+
+/**
+ * gzip/deflate for API responses. The servlet's output is buffered and compressed when the
+ * client accepts it, the status is 200, the type is JSON or CBOR and the body is at least
+ * {@code threshold} bytes (init param, default 1024; {@code level} 1-9, default 6).
+ * Bodies the servlet already sent with a Content-Encoding (cached gzip copies, see
+ * {@link Compression#write}) pass through untouched.
+ */
+public class CompressionFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        Compression.configure(intParam(filterConfig, "threshold", 1024), intParam(filterConfig, "level", 6));
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String encoding = Compression.negotiate(httpRequest);
+        if (encoding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        BufferedResponse buffered = new BufferedResponse(httpResponse);
+        chain.doFilter(request, buffered);
+        byte[] body = buffered.body();
+
+        if (httpResponse.containsHeader("Content-Encoding")
+                || httpResponse.getStatus() != HttpServletResponse.SC_OK
+                || body.length < Compression.threshold()
+                || !compressible(httpResponse.getContentType())) {
+            httpResponse.setContentLength(body.length);
+            if (body.length > 0) httpResponse.getOutputStream().write(body);
+            return;
+        }
+
+        byte[] compressed = Compression.compress(body, encoding);
+        httpResponse.setHeader("Content-Encoding", encoding);
+        httpResponse.addHeader("Vary", "Accept-Encoding");
+        httpResponse.setContentLength(compressed.length);
+        httpResponse.getOutputStream().write(compressed);
+    }
+
+    private static boolean compressible(String contentType) {
+        if (contentType == null) return false;
+        String type = contentType.toLowerCase(java.util.Locale.ROOT);
+        return type.startsWith("application/json") || type.startsWith("application/cbor") || type.startsWith("text/");
+    }
+
+    private static int intParam(FilterConfig config, String name, int def) {
+        String v = config.getInitParameter(name);
+        try {
+            return (v == null || v.isBlank()) ? def : Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /**
+     * Collects the body in memory; headers and status go straight to the real response, which is
+     * only committed once the filter has decided on the encoding.
+     */
+    private static final class BufferedResponse extends HttpServletResponseWrapper {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+
+        BufferedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) throw new IllegalStateException("getWriter() has already been called");
+            if (stream == null) {
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {
+                        buffer.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        buffer.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    // writes go to memory and never block, so the stream is writable right away
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        try {
+                            listener.onWritePossible();
+                        } catch (IOException e) {
+                            listener.onError(e);
+                        }
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (stream != null) throw new IllegalStateException("getOutputStream() has already been called");
+            if (writer == null) {
+                String enc = getCharacterEncoding();
+                Charset charset = enc == null ? StandardCharsets.ISO_8859_1 : Charset.forName(enc);
+                writer = new PrintWriter(new OutputStreamWriter(buffer, charset));
+            }
+            return writer;
+        }
+
+        // the real length is set once the body is (or is not) compressed
+        @Override
+        public void setContentLength(int len) {
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+        }
+
+        @Override
+        public void flushBuffer() {
+        }
+
+        @Override
+        public void resetBuffer() {
+            buffer.reset();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            buffer.reset();
+        }
+
+        byte[] body() {
+            if (writer != null) writer.flush();
+            return buffer.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import catalog.CatalogVersion;
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import utils.Cbor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Conditional GET for the read-only catalog endpoints. The ETag is the {@link CatalogVersion}
+ * plus a hash of the request URI and query, so it is known before the servlet runs: a matching
+ * {@code If-None-Match} gets a 304 without reaching the servlet (and its DataSource).
+ * ETag and Cache-Control are only attached to 200 responses.
+ */
+public class ConditionalGetFilter implements Filter {
+    // page lists and search change with every refresh tick, so make clients revalidate each time
+    private static final String REVALIDATE = "no-cache";
+    private static final String SHORT = "public, max-age=60";
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String method = httpRequest.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String etag = etagFor(httpRequest);
+        String cacheControl = cacheControlFor(httpRequest.getServletPath());
+        if (matches(httpRequest.getHeader("If-None-Match"), etag)) {
+            httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            httpResponse.setHeader("ETag", etag);
+            httpResponse.setHeader("Cache-Control", cacheControl);
+            httpResponse.setHeader("Vary", "Accept");
+            return;
+        }
+
+        ValidatorResponse wrapped = new ValidatorResponse(httpResponse, etag, cacheControl);
+        chain.doFilter(request, wrapped);
+        wrapped.addValidators();
+    }
+
+    static String etagFor(HttpServletRequest request) {
+        // FNV-1a over "uri?query", plus the negotiated encoding since CBOR and JSON bodies differ
+        long h = 0xcbf29ce484222325L;
+        String query = request.getQueryString();
+        String key = query == null ? request.getRequestURI() : request.getRequestURI() + "?" + query;
+        if (Cbor.accepts(request)) key += "#cbor";
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return "W/\"" + Long.toHexString(CatalogVersion.current()) + "-" + Long.toHexString(h) + "\"";
+    }
+
+    private static String cacheControlFor(String servletPath) {
+        return switch (servletPath) {
+            case "/api/movies", "/stars", "/api/search/suggest" -> SHORT;
+            default -> REVALIDATE;
+        };
+    }
+
+    // If-None-Match uses weak comparison: W/ prefixes are ignored, "*" matches anything
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+        String opaque = stripWeak(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.equals("*") || stripWeak(c).equals(opaque)) return true;
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * Adds ETag and Cache-Control right before the body starts, once the servlet has had its
+     * chance to pick a status, so 4xx/5xx responses are never marked cacheable.
+     */
+    private static final class ValidatorResponse extends HttpServletResponseWrapper {
+        private final String etag;
+        private final String cacheControl;
+        private boolean added;
+
+        ValidatorResponse(HttpServletResponse response, String etag, String cacheControl) {
+            super(response);
+            this.etag = etag;
+            this.cacheControl = cacheControl;
+        }
+
+        void addValidators() {
+            if (added) return;
+            added = true;
+            HttpServletResponse r = (HttpServletResponse) getResponse();
+            if (r.isCommitted() || r.getStatus() != HttpServletResponse.SC_OK) return;
+            r.setHeader("ETag", etag);
+            r.setHeader("Cache-Control", cacheControl);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addValidators();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addValidators();
+            return super.getWriter();
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            addValidators();
+            super.setContentLength(len);
+        }
+    }
+}
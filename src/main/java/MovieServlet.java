@@ -7,6 +7,8 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 
 import javax.naming.InitialContext;
@@ -22,9 +24,12 @@ import static utils.JsonUtils.parseNullableInt;
 import static utils.SqlSortUtils.*;
 
 import search.Page;
+import search.ResultCache;
 import search.SearchPlan;
-import search.SqlTemplates;
 import search.SearchCriteria;
+import search.SeekCursor;
+import utils.Cbor;
+import utils.Compression;
 
 
 @WebServlet(name = "MovieServlet", urlPatterns = {"/movies_page"})
@@ -54,6 +59,8 @@ public class MovieServlet extends HttpServlet {
             default -> 25;
         };
         int offset = parseIntOrDefault(request.getParameter("offset"), 0, 0, 10_000_000);
+        int maxStars = parseIntOrDefault(request.getParameter("maxStars"), Page.DEFAULT_LIST_CAP, 0, Page.MAX_LIST_CAP);
+        int maxGenres = parseIntOrDefault(request.getParameter("maxGenres"), Page.DEFAULT_LIST_CAP, 0, Page.MAX_LIST_CAP);
 
         String orderKey = buildOrderKey(request); // "m.title ASC, r.rating DESC, m.id ASC"
 
@@ -66,19 +73,46 @@ public class MovieServlet extends HttpServlet {
             return;
         }
 
-        String sql = SqlTemplates.topPagedSql(orderKey);
+        String cursorToken = request.getParameter("cursor");
+        Page page;
+        try {
+            SeekCursor after = (cursorToken == null || cursorToken.isBlank()) ? null : SeekCursor.decode(cursorToken, orderKey);
+            page = new Page(limit, offset, after, maxStars, maxGenres);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            try (PrintWriter out = response.getWriter()) {
+                out.write(gson.toJson(new ErrorPayload("INVALID_CURSOR", e.getMessage())));
+            }
+            return;
+        }
 
-        try (Connection conn = ds.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql);
-             JsonWriter jw = new JsonWriter(response.getWriter())) {
+        // CBOR bodies are cached as their own entries, so a hit never re-encodes
+        boolean cbor = Cbor.accepts(request);
+        ResultCache.Key cacheKey = new ResultCache.Key(cbor ? "movies_page:cbor" : "movies_page", null,
+                limit, page.isSeek() ? 0 : offset, page.isSeek() ? cursorToken : null, orderKey,
+                maxStars, maxGenres);
+        ResultCache.Entry cached = ResultCache.shared().get(cacheKey);
+        if (cached != null) {
+            writeBody(request, response, cached.body(), cached.gzipBody(), cached.nextCursor(), cbor);
+            return;
+        }
 
-            int i = 1;
-            ps.setInt(i++, limit);
-            ps.setInt(i++, offset);
+        StringWriter body = new StringWriter();
+        try (Connection conn = ds.getConnection();
+             PreparedStatement ps = SearchPlan.TOP.prepare(conn, null, page, orderKey);
+             JsonWriter jw = new JsonWriter(body)) {
 
+            SeekCursor next;
             try (ResultSet rs = ps.executeQuery()) {
-                search.MovieJsonWriter.writeArray(jw, rs);
+                next = search.MovieJsonWriter.writeArray(jw, rs, orderKey, limit);
             }
+            jw.flush();
+
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            if (cbor) bytes = Cbor.fromJson(bytes);
+            String nextToken = next == null ? null : next.encode();
+            ResultCache.Entry stored = ResultCache.shared().put(cacheKey, bytes, nextToken);
+            writeBody(request, response, bytes, stored == null ? null : stored.gzipBody(), nextToken, cbor);
 
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -89,6 +123,15 @@ public class MovieServlet extends HttpServlet {
         }
     }
 
+    // header must go out before the (possibly >8KB) body commits the response
+    private static void writeBody(HttpServletRequest request, HttpServletResponse response, byte[] body, byte[] gzipBody,
+                                  String nextCursor, boolean cbor) throws IOException {
+        if (nextCursor != null) response.setHeader(SeekCursor.HEADER, nextCursor);
+        if (cbor) Cbor.setContentType(response);
+        response.setHeader("Vary", "Accept");
+        Compression.write(request, response, body, gzipBody);
+    }
+
     record ErrorPayload(String code, String message) {
     }
 }
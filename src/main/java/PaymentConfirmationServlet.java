@@ -1,5 +1,11 @@
+import cart.Cart;
+import cart.CartLocks;
+import cart.CartStore;
+import cart.CartStores;
+import catalog.PriceCatalog;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -9,10 +15,15 @@ import jakarta.servlet.http.HttpSession;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
@@ -67,31 +78,22 @@ public class PaymentConfirmationServlet extends HttpServlet {
             // Get session
             HttpSession session = request.getSession();
 
-            // Get cart items from session
-            Object cartItemsObj = session.getAttribute("cartItems");
-
-            if (cartItemsObj == null) {
-                System.err.println("PaymentConfirmationServlet - Cart is empty");
-                JsonObject errorResponse = new JsonObject();
-                errorResponse.addProperty("error", "Cart is empty");
-                errorResponse.addProperty("errorCode", "EMPTY_CART");
-                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                response.getWriter().write(errorResponse.toString());
-                return;
-            }
-
-            // Convert cartItems to JsonObject
-            JsonObject cartItems;
-            if (cartItemsObj instanceof JsonObject) {
-                cartItems = (JsonObject) cartItemsObj;
-            } else {
-                // Convert HashMap to JsonObject (assuming the cart is stored as a Map)
-                com.google.gson.Gson gson = new com.google.gson.Gson();
-                String cartItemsJson = gson.toJson(cartItemsObj);
-                cartItems = JsonParser.parseString(cartItemsJson).getAsJsonObject();
+            // Snapshot the cart so the sale is recorded without holding the cart lock
+            CartStore cartStore = CartStores.current();
+            String cartId = cartStore.cartId(request, response, false);
+            Cart cart = null;
+            Lock cartLock = cartId == null ? null : CartLocks.shared().forCart(cartId);
+            if (cartLock != null) {
+                cartLock.lock();
+                try {
+                    Cart stored = cartStore.load(request, cartId);
+                    cart = stored == null ? null : stored.copy();
+                } finally {
+                    cartLock.unlock();
+                }
             }
 
-            if (cartItems.size() == 0) { // Check size, as .isEmpty() is for Map/Collection, not JsonObject in a Gson version context
+            if (cart == null || cart.isEmpty()) {
                 System.err.println("PaymentConfirmationServlet - Cart is empty");
                 JsonObject errorResponse = new JsonObject();
                 errorResponse.addProperty("error", "Cart is empty");
@@ -101,7 +103,7 @@ public class PaymentConfirmationServlet extends HttpServlet {
                 return;
             }
 
-            System.out.println("PaymentConfirmationServlet - Found " + cartItems.size() + " items in cart");
+            System.out.println("PaymentConfirmationServlet - Found " + cart.size() + " items in cart");
 
             // Validate credit card
             String validationError = validateCreditCard(jsonRequest);
@@ -117,11 +119,106 @@ public class PaymentConfirmationServlet extends HttpServlet {
 
             System.out.println("PaymentConfirmationServlet - Credit card validated successfully");
 
+            // Re-check every line against the database in one query before charging
+            Map<String, Integer> currentPrices;
+            try (Connection conn = dataSource.getConnection()) {
+                List<String> movieIds = new ArrayList<>(cart.size());
+                for (int i = 0; i < cart.size(); i++) {
+                    movieIds.add(cart.id(i));
+                }
+                currentPrices = PriceCatalog.fetchPrices(conn, movieIds);
+            }
+
+            List<String> unknownMovies = new ArrayList<>();
+            boolean pricesChanged = false;
+            for (int i = 0; i < cart.size(); i++) {
+                Integer price = currentPrices.get(cart.id(i));
+                if (price == null) {
+                    unknownMovies.add(cart.id(i));
+                } else if (price != cart.priceCents(i)) {
+                    pricesChanged = true;
+                }
+            }
+
+            if (!unknownMovies.isEmpty()) {
+                System.err.println("PaymentConfirmationServlet - Cart has unknown movies: " + unknownMovies);
+                JsonObject errorResponse = new JsonObject();
+                errorResponse.addProperty("error", "Cart contains movies that no longer exist: " + String.join(", ", unknownMovies));
+                errorResponse.addProperty("errorCode", "INVALID_ITEMS");
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().write(errorResponse.toString());
+                return;
+            }
+
+            if (pricesChanged) {
+                // Store the new prices so the client can show them and confirm again. The price
+                // snapshot gets them too, or the next cart request would reprice back to it.
+                PriceCatalog.amend(currentPrices);
+                long newTotalCents;
+                cartLock.lock();
+                try {
+                    Cart stored = cartStore.load(request, cartId);
+                    if (stored == null) stored = cart;
+                    // lines added after the fetch are not in currentPrices: they take the amended
+                    // snapshot's price, or keep their own before the first catalog load
+                    PriceCatalog prices = PriceCatalog.current();
+                    Cart priced = stored;
+                    stored.repriceAll(id -> {
+                        Integer fetched = currentPrices.get(id);
+                        if (fetched != null) return fetched;
+                        return prices.isLoaded() ? prices.priceCents(id) : unitPriceCents(priced, id);
+                    });
+                    cartStore.save(request, cartId, stored);
+                    newTotalCents = stored.totalCents();
+                } finally {
+                    cartLock.unlock();
+                }
+                System.err.println("PaymentConfirmationServlet - Prices changed since the cart was priced");
+                JsonObject errorResponse = new JsonObject();
+                errorResponse.addProperty("error", "Prices changed; please review your cart");
+                errorResponse.addProperty("errorCode", "PRICE_CHANGED");
+                errorResponse.add("totalPrice", new JsonPrimitive(new BigDecimal(Cart.decimal(newTotalCents))));
+                response.setStatus(HttpServletResponse.SC_CONFLICT);
+                response.getWriter().write(errorResponse.toString());
+                return;
+            }
+
+            // Reserve the purchased lines before recording: a second confirm of the same cart
+            // now finds them gone instead of charging again. Anything added meanwhile stays.
+            boolean reserved;
+            cartLock.lock();
+            try {
+                reserved = cartStore.reserve(request, cartId, cart);
+            } finally {
+                cartLock.unlock();
+            }
+
+            if (!reserved) {
+                System.err.println("PaymentConfirmationServlet - Cart changed or is already being checked out");
+                JsonObject errorResponse = new JsonObject();
+                errorResponse.addProperty("error", "Cart changed during checkout; please review your cart");
+                errorResponse.addProperty("errorCode", "CART_CHANGED");
+                response.setStatus(HttpServletResponse.SC_CONFLICT);
+                response.getWriter().write(errorResponse.toString());
+                return;
+            }
+
             // Payment is successful - record in database
             System.out.println("PaymentConfirmationServlet - Recording sales in database...");
-            boolean salesRecorded = recordSalesInDatabase(jsonRequest, cartItems, session);
+            boolean salesRecorded = recordSalesInDatabase(jsonRequest, cart, session);
 
             if (!salesRecorded) {
+                // Give the reserved lines back so the customer can retry
+                cartLock.lock();
+                try {
+                    Cart stored = cartStore.load(request, cartId);
+                    if (stored == null) stored = new Cart();
+                    stored.restore(cart);
+                    cartStore.save(request, cartId, stored);
+                } finally {
+                    cartLock.unlock();
+                }
+
                 // Error response for database failure is already logged in the recording method
                 JsonObject errorResponse = new JsonObject();
                 errorResponse.addProperty("error", "Payment successful but failed to record sale in database (Check server logs for SQLException)");
@@ -133,15 +230,13 @@ public class PaymentConfirmationServlet extends HttpServlet {
 
             System.out.println("PaymentConfirmationServlet - Sales recorded successfully in database");
 
-            // Clear cart after successful recording
-            session.removeAttribute("cartItems");
-
             // Return success response
             String transactionId = "TXN_" + System.currentTimeMillis();
             JsonObject responseJson = new JsonObject();
             responseJson.addProperty("status", "succeeded");
             responseJson.addProperty("message", "Payment successful and sale recorded!");
             responseJson.addProperty("transactionId", transactionId);
+            responseJson.add("totalPrice", new JsonPrimitive(new BigDecimal(Cart.decimal(cart.totalCents()))));
 
             response.getWriter().write(responseJson.toString());
 
@@ -163,7 +258,14 @@ public class PaymentConfirmationServlet extends HttpServlet {
         }
     }
 
-    private boolean recordSalesInDatabase(JsonObject paymentData, JsonObject cartItems, HttpSession session) {
+    private static int unitPriceCents(Cart cart, String movieId) {
+        for (int i = 0; i < cart.size(); i++) {
+            if (cart.id(i).equals(movieId)) return cart.priceCents(i);
+        }
+        return PriceCatalog.DEFAULT_PRICE_CENTS;
+    }
+
+    private boolean recordSalesInDatabase(JsonObject paymentData, Cart cart, HttpSession session) {
         System.out.println("PaymentConfirmationServlet - Starting database recording...");
 
         Connection conn = null;
@@ -215,9 +317,9 @@ public class PaymentConfirmationServlet extends HttpServlet {
 
                 System.out.println("PaymentConfirmationServlet - Preparing to insert sales records...");
 
-                for (String movieIdStr : cartItems.keySet()) {
-                    JsonObject movie = cartItems.getAsJsonObject(movieIdStr);
-                    int quantity = movie.get("quantity").getAsInt();
+                for (int line = 0; line < cart.size(); line++) {
+                    String movieIdStr = cart.id(line);
+                    int quantity = cart.quantity(line);
 
                     // --- Parse movie ID as INT (necessary if the column is INT) ---
                     int movieIntId = -1;
@@ -7,6 +7,8 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -22,9 +24,17 @@ import com.google.gson.stream.JsonWriter;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import performance.PerformanceLog;
+import search.CompactBitmap;
+import search.MovieBitmaps;
 import search.Page;
+import search.ResultCache;
 import search.SearchCriteria;
+import search.SearchFacets;
 import search.SearchPlan;
+import search.SearchSnapshot;
+import search.SeekCursor;
+import utils.Cbor;
+import utils.Compression;
 
 import static utils.JsonUtils.*;
 
@@ -59,6 +69,8 @@ public class SearchServlet extends HttpServlet {
 
         int limit = parseIntOrDefault(request.getParameter("limit"), 20, 1, 100);
         int offset = parseIntOrDefault(request.getParameter("offset"), 0, 0, 10_000);
+        int maxStars = parseIntOrDefault(request.getParameter("maxStars"), Page.DEFAULT_LIST_CAP, 0, Page.MAX_LIST_CAP);
+        int maxGenres = parseIntOrDefault(request.getParameter("maxGenres"), Page.DEFAULT_LIST_CAP, 0, Page.MAX_LIST_CAP);
         String title = request.getParameter("title");
         String director = request.getParameter("director");
         String star = request.getParameter("star");
@@ -66,11 +78,44 @@ public class SearchServlet extends HttpServlet {
         Integer year = parseNullableInt(request.getParameter("year"));
         Integer genreId = parseNullableInt(request.getParameter("genreId"));
         String genreName = request.getParameter("genre");
+        // genreIds=1,2,3 with genreMatch=all (every genre) or any (default)
+        List<Integer> genreIds = utils.JsonUtils.parseIntList(request.getParameter("genreIds"));
+        boolean allGenres = "all".equalsIgnoreCase(request.getParameter("genreMatch"));
+        boolean fuzzy = "true".equalsIgnoreCase(request.getParameter("fuzzy"));
+        // either flag wraps the page as {"total":..,"facets":..,"results":[..]}
+        boolean withFacets = "true".equalsIgnoreCase(request.getParameter("facets"));
+        boolean withCount = withFacets || "true".equalsIgnoreCase(request.getParameter("count"));
 
         String orderKey = utils.SqlSortUtils.buildOrderKey(request);
 
-        SearchCriteria criteria = new SearchCriteria(title, director, star, year, initial, genreId, genreName);
-        Page page = new Page(limit, offset);
+        SearchCriteria criteria = new SearchCriteria(title, director, star, year, initial, genreId, genreName, genreIds, allGenres);
+
+        // fuzzy results are ranked by similarity, so they page by offset only
+        String cursorToken = fuzzy ? null : request.getParameter("cursor");
+        Page page;
+        try {
+            SeekCursor after = (cursorToken == null || cursorToken.isBlank()) ? null : SeekCursor.decode(cursorToken, orderKey);
+            page = new Page(limit, offset, after, maxStars, maxGenres);
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            try (PrintWriter out = response.getWriter()) {
+                out.write(gson.toJson(new ErrorPayload("INVALID_CURSOR", e.getMessage())));
+            }
+            PerformanceLog.log(System.nanoTime() - tsStartTime, 0);
+            return;
+        }
+
+        // CBOR bodies are cached as their own entries, so a hit never re-encodes
+        boolean cbor = Cbor.accepts(request);
+        ResultCache.Key cacheKey = new ResultCache.Key(cacheEndpoint(fuzzy, withCount, withFacets) + (cbor ? ":cbor" : ""), ResultCache.normalize(criteria),
+                limit, page.isSeek() ? 0 : offset, page.isSeek() ? cursorToken : null, orderKey,
+                maxStars, maxGenres);
+        ResultCache.Entry cached = ResultCache.shared().get(cacheKey);
+        if (cached != null) {
+            writeBody(request, response, cached.body(), cached.gzipBody(), cached.nextCursor(), cbor);
+            PerformanceLog.log(System.nanoTime() - tsStartTime, 0);
+            return;
+        }
 
         DataSource localDataSource = this.dataSource;
 
@@ -90,9 +135,11 @@ public class SearchServlet extends HttpServlet {
             return;
         }
 
+        // page, total and facets all read this one snapshot, even if a reload publishes mid-request
+        SearchSnapshot snap = SearchSnapshot.current();
         SearchPlan plan;
         try {
-            plan = SearchPlan.choose(criteria);
+            plan = SearchPlan.choose(criteria, fuzzy, snap);
         } catch (IllegalArgumentException e) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             response.setContentType("application/json;charset=UTF-8");
@@ -120,7 +167,7 @@ public class SearchServlet extends HttpServlet {
             // 3. Measure Statement Preparation Time
             // (Assuming plan.prepare calls conn.prepareStatement internaly)
             dbStart = System.nanoTime();
-            ps = plan.prepare(conn, criteria, page, orderKey);
+            ps = plan.prepare(conn, snap, criteria, page, orderKey);
             dbEnd = System.nanoTime();
             tj += (dbEnd - dbStart);
 
@@ -130,8 +177,25 @@ public class SearchServlet extends HttpServlet {
             dbEnd = System.nanoTime();
             tj += (dbEnd - dbStart);
 
-            jsonWriter = new JsonWriter(response.getWriter());
-            search.MovieJsonWriter.writeArray(jsonWriter, rs);
+            // buffered so the next-page cursor header can still be set after the rows are read
+            StringWriter body = new StringWriter();
+            jsonWriter = new JsonWriter(body);
+            if (withCount) {
+                dbStart = System.nanoTime();
+                CompactBitmap candidates = SearchFacets.candidates(conn, criteria, plan, snap);
+                tj += (System.nanoTime() - dbStart);
+                writeSummary(jsonWriter, snap.bitmaps(), candidates, withFacets);
+                jsonWriter.name("results");
+            }
+            SeekCursor next = search.MovieJsonWriter.writeArray(jsonWriter, rs, orderKey, limit);
+            if (withCount) jsonWriter.endObject();
+            if (plan == SearchPlan.FUZZY_TITLE) next = null;
+            jsonWriter.flush();
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            if (cbor) bytes = Cbor.fromJson(bytes);
+            String nextToken = next == null ? null : next.encode();
+            ResultCache.Entry stored = ResultCache.shared().put(cacheKey, bytes, nextToken);
+            writeBody(request, response, bytes, stored == null ? null : stored.gzipBody(), nextToken, cbor);
             
             // 7. END Ts and Log (success case)
             long tsEndTime = System.nanoTime();
@@ -170,6 +234,58 @@ public class SearchServlet extends HttpServlet {
         }
     }
 
+    private static String cacheEndpoint(boolean fuzzy, boolean withCount, boolean withFacets) {
+        String base = fuzzy ? "search-fuzzy" : "search";
+        if (withFacets) return base + "+facets";
+        return withCount ? base + "+count" : base;
+    }
+
+    // opens the wrapper object; the caller writes "results" and closes it
+    private static void writeSummary(JsonWriter jw, MovieBitmaps bitmaps, CompactBitmap candidates, boolean withFacets) throws IOException {
+        jw.beginObject();
+        if (candidates == null) {
+            // bitmaps not loaded yet: the page is still served, without numbers
+            jw.name("total").nullValue();
+            return;
+        }
+        MovieBitmaps.Facets facets = bitmaps.facets(candidates);
+        jw.name("total").value(facets.total());
+        if (!withFacets) return;
+
+        jw.name("facets").beginObject();
+        jw.name("genres").beginArray();
+        for (MovieBitmaps.Count g : facets.genres()) {
+            jw.beginObject();
+            writeIfNotNull(jw, "id", g.key());
+            writeIfNotNull(jw, "name", g.name());
+            writeIfNotNull(jw, "count", g.count());
+            jw.endObject();
+        }
+        jw.endArray();
+        writeHistogram(jw, "decades", "decade", facets.decades());
+        writeHistogram(jw, "years", "year", facets.years());
+        jw.endObject();
+    }
+
+    private static void writeHistogram(JsonWriter jw, String name, String keyName, List<MovieBitmaps.Count> counts) throws IOException {
+        jw.name(name).beginArray();
+        for (MovieBitmaps.Count c : counts) {
+            jw.beginObject();
+            writeIfNotNull(jw, keyName, c.key());
+            writeIfNotNull(jw, "count", c.count());
+            jw.endObject();
+        }
+        jw.endArray();
+    }
+
+    private static void writeBody(HttpServletRequest request, HttpServletResponse response, byte[] body, byte[] gzipBody,
+                                  String nextCursor, boolean cbor) throws IOException {
+        if (nextCursor != null) response.setHeader(SeekCursor.HEADER, nextCursor);
+        if (cbor) Cbor.setContentType(response);
+        response.setHeader("Vary", "Accept");
+        Compression.write(request, response, body, gzipBody);
+    }
+
     record ErrorPayload(String code, String message) {
     }
 
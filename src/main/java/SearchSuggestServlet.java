@@ -0,0 +1,45 @@
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+import com.google.gson.stream.JsonWriter;
+import catalog.MovieCatalog;
+import search.TitleSuggestIndex;
+
+import static utils.JsonUtils.*;
+
+
+/**
+ * Typeahead for the search bar: top-k titles by rating with a word starting with {@code q}.
+ * Served entirely from {@link TitleSuggestIndex}; never touches the DataSource.
+ */
+@WebServlet(name = "SearchSuggestServlet", urlPatterns = {"/api/search/suggest"})
+public class SearchSuggestServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType("application/json;charset=UTF-8");
+
+        String q = request.getParameter("q");
+        int k = parseIntOrDefault(request.getParameter("limit"), 10, 1, TitleSuggestIndex.MAX_K);
+
+        TitleSuggestIndex index = TitleSuggestIndex.current();
+        int[] ordinals = (q == null) ? new int[0] : index.suggest(q, k);
+        MovieCatalog catalog = index.catalog();
+
+        try (JsonWriter jsonWriter = new JsonWriter(response.getWriter())) {
+            jsonWriter.beginArray();
+            for (int ord : ordinals) {
+                jsonWriter.beginObject();
+                writeIfNotNull(jsonWriter, "id", catalog.id(ord));
+                writeIfNotNull(jsonWriter, "title", catalog.title(ord));
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
+        }
+    }
+}
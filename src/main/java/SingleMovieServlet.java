@@ -9,11 +9,19 @@ import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -21,7 +29,11 @@ import javax.sql.DataSource;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import catalog.MovieDetailCache;
+import catalog.StarPopularity;
 import search.MovieJsonWriter;
+import search.SqlTemplates;
+import utils.Cbor;
 import performance.PerformanceLog;
 
 import static utils.JsonUtils.*;
@@ -31,7 +43,8 @@ public class SingleMovieServlet extends HttpServlet {
     private DataSource dataSource;
     private final Gson gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create();
 
-    private static final String MOVIE_INFO =
+    // %s = how the cast is ordered: in memory from StarPopularity, or by counting in SQL until it is loaded
+    private static final String MOVIE_INFO_FMT =
             """
                                       WITH m_sel AS (
                                           SELECT m.id, m.title, m.year, m.director, r.rating, r.vote_count
@@ -46,12 +59,7 @@ public class SingleMovieServlet extends HttpServlet {
                       FROM stars_in_movies sim
                       JOIN stars s ON s.id = sim.star_id
                       JOIN m_sel ms ON ms.id = sim.movie_id
-                      LEFT JOIN (
-                        SELECT star_id, COUNT(*) AS count
-                        FROM stars_in_movies
-                        GROUP BY star_id
-                      ) sc ON sc.star_id = s.id
-                      ORDER BY COALESCE(sc.count, 0) DESC, s.name ASC   -- use count ONLY to order
+                      %s
                     ) AS star_sorted
                     
                                            ),
@@ -79,6 +87,19 @@ public class SingleMovieServlet extends HttpServlet {
                                                LEFT JOIN genres_json g ON TRUE;   
                     """;
 
+    // one batch response should not turn into a scan; the pages that use it show at most 100 movies
+    private static final int MAX_BATCH_IDS = 100;
+
+    private static final String MOVIE_INFO = String.format(MOVIE_INFO_FMT, "ORDER BY s.name ASC");
+
+    private static final String MOVIE_INFO_COUNTED = String.format(MOVIE_INFO_FMT, """
+                      LEFT JOIN (
+                        SELECT star_id, COUNT(*) AS count
+                        FROM stars_in_movies
+                        GROUP BY star_id
+                      ) sc ON sc.star_id = s.id
+                      ORDER BY COALESCE(sc.count, 0) DESC, s.name ASC   -- use count ONLY to order""");
+
 
     @Override
     public void init(ServletConfig config) throws ServletException {
@@ -103,6 +124,10 @@ public class SingleMovieServlet extends HttpServlet {
         response.setContentType("application/json;charset=UTF-8");
 
         String pathInfo = request.getPathInfo();
+        if ((pathInfo == null || pathInfo.equals("/")) && request.getParameter("ids") != null) {
+            doBatch(request, response, tsStartTime);
+            return;
+        }
         if (pathInfo == null || pathInfo.equals("/") || pathInfo.isBlank()) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             response.getWriter().write("{\"error\":\"Missing movie in URL (expected /movies/{id})\"}");
@@ -116,6 +141,13 @@ public class SingleMovieServlet extends HttpServlet {
         String raw = pathInfo.substring(1); // "tt0094859"
         String movieId = URLDecoder.decode(raw, StandardCharsets.UTF_8);
 
+        byte[] cached = MovieDetailCache.shared().get(movieId);
+        if (cached != null) {
+            writeBody(request, response, cached);
+            PerformanceLog.log(System.nanoTime() - tsStartTime, 0);
+            return;
+        }
+
         DataSource localDataSource = this.dataSource;
         if (localDataSource == null) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -141,9 +173,13 @@ public class SingleMovieServlet extends HttpServlet {
             dbEnd = System.nanoTime();
             tj += (dbEnd - dbStart);
 
+            // read before querying, so a refresh that lands mid-request keeps this body out of the cache
+            long cacheVersion = MovieDetailCache.shared().version();
+            StarPopularity stars = StarPopularity.current();
+
             // 3. Measure Statement Preparation Time
             dbStart = System.nanoTime();
-            preparedStatement = connection.prepareStatement(MOVIE_INFO);
+            preparedStatement = connection.prepareStatement(stars.isEmpty() ? MOVIE_INFO_COUNTED : MOVIE_INFO);
             preparedStatement.setString(1, movieId);
             dbEnd = System.nanoTime();
             tj += (dbEnd - dbStart);
@@ -154,9 +190,12 @@ public class SingleMovieServlet extends HttpServlet {
             dbEnd = System.nanoTime();
             tj += (dbEnd - dbStart);
 
-            jsonWriter = new JsonWriter(response.getWriter());
+            StringWriter body = new StringWriter();
+            jsonWriter = new JsonWriter(body);
 
-            boolean found = MovieJsonWriter.writeSingleIfPresent(jsonWriter, resultSet);
+            boolean found = stars.isEmpty()
+                    ? MovieJsonWriter.writeSingleIfPresent(jsonWriter, resultSet)
+                    : MovieJsonWriter.writeSingleIfPresent(jsonWriter, resultSet, stars::count);
             if (!found) {
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 // Log performance for not found case
@@ -167,6 +206,11 @@ public class SingleMovieServlet extends HttpServlet {
                 return;
             }
 
+            jsonWriter.flush();
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            MovieDetailCache.shared().put(movieId, cacheVersion, bytes);
+            writeBody(request, response, bytes);
+
             System.out.println("SingleMovieServlet: query succeeded for id=" + movieId);
 
             // 5. END Ts and Log (success case)
@@ -207,6 +251,102 @@ public class SingleMovieServlet extends HttpServlet {
         }
     }
 
+    // /api/movies?ids=a,b,c -> JSON array in request order; unknown ids are left out
+    private void doBatch(HttpServletRequest request, HttpServletResponse response, long tsStartTime) throws IOException {
+        long tj = 0;
+        Set<String> unique = new LinkedHashSet<>();
+        for (String id : request.getParameter("ids").split(",")) {
+            if (!id.isBlank()) unique.add(id.trim());
+        }
+        if (unique.isEmpty() || unique.size() > MAX_BATCH_IDS) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            try (PrintWriter out = response.getWriter()) {
+                out.write(gson.toJson(new ErrorPayload("INVALID_IDS", "expected 1 to " + MAX_BATCH_IDS + " comma-separated movie ids")));
+            }
+            PerformanceLog.log(System.nanoTime() - tsStartTime, 0);
+            return;
+        }
+        List<String> ids = new ArrayList<>(unique);
+
+        // cached bodies first; only the misses go to MySQL, all in one statement
+        MovieDetailCache cache = MovieDetailCache.shared();
+        Map<String, byte[]> bodies = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            byte[] cached = cache.get(id);
+            if (cached != null) bodies.put(id, cached);
+            else missing.add(id);
+        }
+
+        if (!missing.isEmpty()) {
+            if (dataSource == null) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                try (PrintWriter out = response.getWriter()) {
+                    out.write(gson.toJson(new ErrorPayload("DATA_SOURCE_NOT_INITIALIZED", "DataSource has not been configured")));
+                }
+                PerformanceLog.log(System.nanoTime() - tsStartTime, 0);
+                return;
+            }
+
+            long cacheVersion = cache.version();
+            StarPopularity stars = StarPopularity.current();
+            long dbStart = System.nanoTime();
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement ps = connection.prepareStatement(SqlTemplates.movieDetailsSql(missing.size(), stars.isEmpty()))) {
+                for (int i = 0; i < missing.size(); i++) {
+                    ps.setString(i + 1, missing.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    tj += System.nanoTime() - dbStart;
+                    while (rs.next()) {
+                        StringWriter one = new StringWriter();
+                        JsonWriter jw = new JsonWriter(one);
+                        if (stars.isEmpty()) MovieJsonWriter.writeOne(jw, rs);
+                        else MovieJsonWriter.writeOne(jw, rs, stars::count);
+                        jw.flush();
+                        byte[] bytes = one.toString().getBytes(StandardCharsets.UTF_8);
+                        String id = rs.getString("id");
+                        cache.put(id, cacheVersion, bytes);
+                        bodies.put(id, bytes);
+                    }
+                }
+            } catch (SQLException e) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                try (PrintWriter out = response.getWriter()) {
+                    out.write(gson.toJson(new ErrorPayload(e.getClass().getName(), e.getMessage())));
+                }
+                e.printStackTrace();
+                PerformanceLog.log(System.nanoTime() - tsStartTime, tj);
+                return;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        boolean first = true;
+        for (String id : ids) {
+            byte[] body = bodies.get(id);
+            if (body == null) continue;
+            if (!first) out.write(',');
+            out.write(body);
+            first = false;
+        }
+        out.write(']');
+        writeBody(request, response, out.toByteArray());
+        PerformanceLog.log(System.nanoTime() - tsStartTime, tj);
+    }
+
+    // detail bodies are cached as JSON; CBOR clients get them transcoded on the way out
+    private static void writeBody(HttpServletRequest request, HttpServletResponse response, byte[] body) throws IOException {
+        if (Cbor.accepts(request)) {
+            body = Cbor.fromJson(body);
+            Cbor.setContentType(response);
+        }
+        response.setHeader("Vary", "Accept");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
     record ErrorPayload(String code, String message) {
     }
 }
\ No newline at end of file
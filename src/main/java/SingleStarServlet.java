@@ -11,6 +11,7 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
@@ -22,6 +23,7 @@ import javax.sql.DataSource;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import performance.PerformanceLog;
+import utils.Cbor;
 
 import static utils.JsonUtils.*;
 
@@ -130,7 +132,8 @@ public class SingleStarServlet extends HttpServlet {
             dbEnd = System.nanoTime();
             tj += (dbEnd - dbStart);
 
-            jsonWriter = new JsonWriter(response.getWriter());
+            StringWriter body = new StringWriter();
+            jsonWriter = new JsonWriter(body);
 
             if (!resultSet.next()) {
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -154,6 +157,16 @@ public class SingleStarServlet extends HttpServlet {
             writeJsonArrayOrEmpty(jsonWriter, resultSet.getString("movies"));
 
             jsonWriter.endObject();
+            jsonWriter.flush();
+
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            if (Cbor.accepts(request)) {
+                bytes = Cbor.fromJson(bytes);
+                Cbor.setContentType(response);
+            }
+            response.setHeader("Vary", "Accept");
+            response.setContentLength(bytes.length);
+            response.getOutputStream().write(bytes);
 
             System.out.println("SingleStarServlet: query succeeded for id=" + starId);
 
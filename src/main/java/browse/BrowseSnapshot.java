@@ -0,0 +1,123 @@
+package browse;
+
+import com.google.gson.stream.JsonWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import utils.Compression;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static utils.JsonUtils.writeIfNotNull;
+
+/**
+ * Pre-encoded body of a browse endpoint: the JSON bytes, their gzip copy and a weak ETag over
+ * the bytes. The tag is weak because the identity and gzip (or filter-deflated) responses
+ * share it, and RFC 9110 reserves strong validators for one exact content-coding.
+ * <p>
+ * The genre list is loaded by {@code catalog.CatalogRefresher} at startup and checked on every
+ * refresh tick; the title initials never change. Requests only read the published snapshot.
+ */
+public record BrowseSnapshot(byte[] body, byte[] gzipBody, String etag) {
+    private static final String GENRES_SQL = "SELECT id, name FROM genres ORDER BY name ASC";
+    private static final String CACHE_CONTROL = "public, max-age=300";
+
+    private static final BrowseSnapshot TITLE_INITIALS = of(initialsJson());
+
+    private static volatile BrowseSnapshot genres;
+
+    public static BrowseSnapshot titleInitials() {
+        return TITLE_INITIALS;
+    }
+
+    /**
+     * @return the genre list, or null until the first load has finished
+     */
+    public static BrowseSnapshot genres() {
+        return genres;
+    }
+
+    /**
+     * Re-reads the genre table and publishes a new snapshot only when the bytes changed.
+     *
+     * @return true when a new snapshot was published
+     */
+    public static boolean refreshGenres(Connection c) throws SQLException {
+        StringWriter out = new StringWriter();
+        try (PreparedStatement ps = c.prepareStatement(GENRES_SQL);
+             ResultSet rs = ps.executeQuery();
+             JsonWriter jw = new JsonWriter(out)) {
+            jw.beginArray();
+            while (rs.next()) {
+                jw.beginObject();
+                writeIfNotNull(jw, "id", rs.getObject("id"));
+                writeIfNotNull(jw, "name", rs.getString("name"));
+                jw.endObject();
+            }
+            jw.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter does not throw
+        }
+        byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+        BrowseSnapshot before = genres;
+        if (before != null && Arrays.equals(before.body, body)) return false;
+        genres = of(body);
+        return true;
+    }
+
+    /**
+     * 304 when If-None-Match carries this ETag (weak comparison), else the (possibly gzip) body.
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", CACHE_CONTROL);
+        if (matches(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType("application/json;charset=UTF-8");
+        Compression.write(request, response, body, gzipBody);
+    }
+
+    private boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) return false;
+        String opaque = etag.substring(2); // without W/
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.equals("*") || c.equals(opaque) || c.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static BrowseSnapshot of(byte[] body) {
+        // FNV-1a over the bytes: equal bodies always share an ETag, across restarts too
+        long h = 0xcbf29ce484222325L;
+        for (byte b : body) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return new BrowseSnapshot(body, Compression.precompress(body), "W/\"" + Long.toHexString(h) + "\"");
+    }
+
+    private static byte[] initialsJson() {
+        StringWriter out = new StringWriter();
+        try (JsonWriter jw = new JsonWriter(out)) {
+            jw.beginArray();
+            jw.value("0-9");
+            for (char character = 'A'; character <= 'Z'; character++) {
+                jw.value(String.valueOf(character));
+            }
+            jw.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
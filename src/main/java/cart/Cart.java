@@ -0,0 +1,509 @@
+package cart;
+
+import com.google.gson.stream.JsonWriter;
+import jakarta.servlet.http.HttpSession;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToIntFunction;
+
+/**
+ * Shopping cart kept in the {@link HttpSession}: one slot per movie in parallel arrays
+ * (id, title, quantity, unit price in cents) in insertion order.
+ * <p>
+ * Carts hold a handful of lines, so lookups are a linear scan over {@code ids} rather than
+ * a hash map of boxed values. The serialized form is just the line count followed by the
+ * raw fields of each line, which keeps session persistence and replication cheap.
+ * <p>
+ * Every mutation bumps {@link #version()} and stamps the lines it touched, and removals
+ * leave a short-lived tombstone. So a client that last saw version {@code v} can be sent
+ * just the lines changed since {@code v} (see {@link #canDiff}). Stamps and tombstones are
+ * not serialized; a deserialized cart answers older versions with a full listing.
+ * <p>
+ * Versions are unique per cart instance: the high bits are a random epoch picked when the
+ * cart is created and the low {@value #COUNTER_BITS} bits count mutations. So a version a
+ * client kept from a cart that was checked out, evicted or replaced is not one the new cart
+ * can diff from, and gets a full listing. Versions only grow (after millions of edits the
+ * counter carries into the epoch) and stay below 2<sup>53</sup>, exact as JavaScript numbers.
+ * <p>
+ * Not thread-safe; callers hold the session's {@link CartLocks} stripe.
+ */
+public final class Cart implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 2L;
+
+    public static final String SESSION_ATTRIBUTE = "cart";
+
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int MAX_TOMBSTONES = 16;
+    private static final int COUNTER_BITS = 22;
+    private static final long EPOCHS = 1L << (53 - COUNTER_BITS);
+
+    // rough 64-bit compressed-oops sizes for estimatedBytes()
+    private static final int OBJECT_BYTES = 80;
+    private static final int ARRAY_HEADER = 16;
+    private static final int STRING_BYTES = 40; // String + byte[] headers; Latin-1 payload added per char
+
+    private transient String[] ids;
+    private transient String[] titles;
+    private transient int[] quantities;
+    private transient int[] priceCents;
+    private transient int size;
+
+    private transient long version;
+    private transient long[] lineVersions;
+    /** Oldest version whose changes can still be listed completely. */
+    private transient long diffFloor;
+    private transient String[] removedIds = new String[MAX_TOMBSTONES];
+    private transient long[] removedAt = new long[MAX_TOMBSTONES];
+    private transient int removedCount;
+
+    public Cart() {
+        allocate(INITIAL_CAPACITY);
+        version = newEpoch();
+        diffFloor = version;
+    }
+
+    /**
+     * @return the session's cart, or null when nothing has been added yet
+     */
+    public static Cart get(HttpSession session) {
+        Object cart = session.getAttribute(SESSION_ATTRIBUTE);
+        return cart instanceof Cart c ? c : null;
+    }
+
+    /**
+     * Adds {@code quantity} copies, creating the line if needed; the title and price of an
+     * existing line are kept.
+     *
+     * @return the line's new quantity
+     * @throws ArithmeticException when the line's quantity would overflow; the cart is unchanged
+     */
+    public int add(String movieId, String title, int quantity, int unitPriceCents) {
+        int i = indexOf(movieId);
+        if (i >= 0) {
+            int q = Math.addExact(quantities[i], quantity);
+            version++;
+            quantities[i] = q;
+            lineVersions[i] = version;
+            return q;
+        }
+        version++;
+        forgetTombstone(movieId);
+        if (size == ids.length) grow();
+        ids[size] = movieId;
+        titles[size] = title;
+        quantities[size] = quantity;
+        priceCents[size] = unitPriceCents;
+        lineVersions[size] = version;
+        size++;
+        return quantity;
+    }
+
+    /**
+     * Changes a line's quantity by {@code delta}, removing the line when it drops to zero.
+     *
+     * @return the new quantity (0 when removed), or -1 when the movie is not in the cart
+     * @throws ArithmeticException when the line's quantity would overflow; the cart is unchanged
+     */
+    public int adjust(String movieId, int delta) {
+        int i = indexOf(movieId);
+        if (i < 0) return -1;
+        int q = Math.addExact(quantities[i], delta);
+        version++;
+        if (q <= 0) {
+            removeAt(i);
+            return 0;
+        }
+        quantities[i] = q;
+        lineVersions[i] = version;
+        return q;
+    }
+
+    public boolean remove(String movieId) {
+        int i = indexOf(movieId);
+        if (i < 0) return false;
+        version++;
+        removeAt(i);
+        return true;
+    }
+
+    /**
+     * Sets every line's unit price to {@code priceOf(movieId)}, stamping the lines that changed.
+     *
+     * @return how many lines changed price
+     */
+    public int repriceAll(ToIntFunction<String> priceOf) {
+        int changed = 0;
+        for (int i = 0; i < size; i++) {
+            int cents = priceOf.applyAsInt(ids[i]);
+            if (cents == priceCents[i]) continue;
+            if (changed++ == 0) version++;
+            priceCents[i] = cents;
+            lineVersions[i] = version;
+        }
+        return changed;
+    }
+
+    /**
+     * Lowers each of this cart's lines by the quantity {@code purchased} holds for it,
+     * dropping lines that reach zero. Lines added after the snapshot was taken survive.
+     */
+    public void subtract(Cart purchased) {
+        for (int j = 0; j < purchased.size; j++) {
+            adjust(purchased.ids[j], -purchased.quantities[j]);
+        }
+    }
+
+    /**
+     * Puts back lines taken out with {@link #subtract}, e.g. when recording the sale failed.
+     * Lines still present keep their current title and price.
+     */
+    public void restore(Cart purchased) {
+        for (int j = 0; j < purchased.size; j++) {
+            add(purchased.ids[j], purchased.titles[j], purchased.quantities[j], purchased.priceCents[j]);
+        }
+    }
+
+    /**
+     * @return true when every line of {@code other} is here at the same unit price and at
+     *         least the same quantity, so {@link #subtract subtracting} it removes nothing else
+     */
+    public boolean covers(Cart other) {
+        for (int j = 0; j < other.size; j++) {
+            int i = indexOf(other.ids[j]);
+            if (i < 0 || quantities[i] < other.quantities[j] || priceCents[i] != other.priceCents[j]) return false;
+        }
+        return true;
+    }
+
+    public Cart copy() {
+        Cart c = new Cart();
+        c.allocate(Math.max(INITIAL_CAPACITY, size));
+        System.arraycopy(ids, 0, c.ids, 0, size);
+        System.arraycopy(titles, 0, c.titles, 0, size);
+        System.arraycopy(quantities, 0, c.quantities, 0, size);
+        System.arraycopy(priceCents, 0, c.priceCents, 0, size);
+        System.arraycopy(lineVersions, 0, c.lineVersions, 0, size);
+        c.size = size;
+        c.version = version;
+        c.diffFloor = diffFloor;
+        System.arraycopy(removedIds, 0, c.removedIds, 0, removedCount);
+        System.arraycopy(removedAt, 0, c.removedAt, 0, removedCount);
+        c.removedCount = removedCount;
+        return c;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return true when {@link #writeChangedItems} and {@link #writeRemovedIds} fully describe
+     *         the changes made after {@code sinceVersion}
+     */
+    public boolean canDiff(long sinceVersion) {
+        return sinceVersion >= diffFloor && sinceVersion <= version;
+    }
+
+    public boolean contains(String movieId) {
+        return indexOf(movieId) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String id(int i) {
+        return ids[i];
+    }
+
+    public String title(int i) {
+        return titles[i];
+    }
+
+    public int quantity(int i) {
+        return quantities[i];
+    }
+
+    public int priceCents(int i) {
+        return priceCents[i];
+    }
+
+    public int totalQuantity() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += quantities[i];
+        }
+        return total;
+    }
+
+    /**
+     * Approximate heap held by this cart: the object, its arrays at current capacity and the
+     * id and title strings (counted as unshared).
+     */
+    public long estimatedBytes() {
+        int capacity = ids.length;
+        long bytes = OBJECT_BYTES
+                + 2L * (ARRAY_HEADER + 4L * capacity)  // ids, titles
+                + 2L * (ARRAY_HEADER + 4L * capacity)  // quantities, priceCents
+                + ARRAY_HEADER + 8L * capacity         // lineVersions
+                + ARRAY_HEADER + 4L * removedIds.length
+                + ARRAY_HEADER + 8L * removedAt.length;
+        for (int i = 0; i < size; i++) {
+            bytes += STRING_BYTES + ids[i].length();
+            if (titles[i] != null) bytes += STRING_BYTES + titles[i].length();
+        }
+        for (int t = 0; t < removedCount; t++) {
+            bytes += STRING_BYTES + removedIds[t].length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Shrinks the arrays to the current line count and drops the removal tombstones, so later
+     * {@link #canDiff} calls for earlier versions answer false.
+     *
+     * @return approximate bytes released
+     */
+    public long trimToSize() {
+        long before = estimatedBytes();
+        int capacity = Math.max(1, size);
+        if (capacity < ids.length) {
+            ids = Arrays.copyOf(ids, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            priceCents = Arrays.copyOf(priceCents, capacity);
+            lineVersions = Arrays.copyOf(lineVersions, capacity);
+        }
+        if (removedCount > 0) {
+            Arrays.fill(removedIds, 0, removedCount, null);
+            removedCount = 0;
+            diffFloor = version;
+        }
+        return before - estimatedBytes();
+    }
+
+    public long totalCents() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += (long) priceCents[i] * quantities[i];
+        }
+        return total;
+    }
+
+    /**
+     * Writes the lines as the {@code cartItems} array of the cart API:
+     * {@code [{"id","title","price","quantity"}, ...]}.
+     */
+    public void writeItems(JsonWriter jw) throws IOException {
+        jw.beginArray();
+        for (int i = 0; i < size; i++) {
+            writeLine(jw, i);
+        }
+        jw.endArray();
+    }
+
+    /**
+     * Like {@link #writeItems} but only the lines added or changed after {@code sinceVersion}.
+     */
+    public void writeChangedItems(JsonWriter jw, long sinceVersion) throws IOException {
+        jw.beginArray();
+        for (int i = 0; i < size; i++) {
+            if (lineVersions[i] > sinceVersion) writeLine(jw, i);
+        }
+        jw.endArray();
+    }
+
+    /**
+     * Writes the ids of lines removed after {@code sinceVersion} and not re-added since.
+     */
+    public void writeRemovedIds(JsonWriter jw, long sinceVersion) throws IOException {
+        jw.beginArray();
+        for (int t = 0; t < removedCount; t++) {
+            if (removedAt[t] > sinceVersion) jw.value(removedIds[t]);
+        }
+        jw.endArray();
+    }
+
+    private void writeLine(JsonWriter jw, int i) throws IOException {
+        jw.beginObject();
+        jw.name("id").value(ids[i]);
+        jw.name("title").value(titles[i]);
+        jw.name("price").jsonValue(decimal(priceCents[i]));
+        jw.name("quantity").value(quantities[i]);
+        jw.endObject();
+    }
+
+    /**
+     * Formats cents as a JSON decimal with two fraction digits, e.g. {@code 1999 -> 19.99}.
+     */
+    public static String decimal(long cents) {
+        long abs = Math.abs(cents);
+        long frac = abs % 100;
+        return (cents < 0 ? "-" : "") + (abs / 100) + (frac < 10 ? ".0" : ".") + frac;
+    }
+
+    private static long newEpoch() {
+        return ThreadLocalRandom.current().nextLong(1, EPOCHS) << COUNTER_BITS;
+    }
+
+    private int indexOf(String movieId) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i].equals(movieId)) return i;
+        }
+        return -1;
+    }
+
+    private void removeAt(int i) {
+        String id = ids[i];
+        int tail = size - i - 1;
+        if (tail > 0) {
+            System.arraycopy(ids, i + 1, ids, i, tail);
+            System.arraycopy(titles, i + 1, titles, i, tail);
+            System.arraycopy(quantities, i + 1, quantities, i, tail);
+            System.arraycopy(priceCents, i + 1, priceCents, i, tail);
+            System.arraycopy(lineVersions, i + 1, lineVersions, i, tail);
+        }
+        size--;
+        ids[size] = null;
+        titles[size] = null;
+        addTombstone(id);
+    }
+
+    /**
+     * Records a removal at the current version. When the list is full the oldest tombstone is
+     * dropped and {@link #diffFloor} moves past it, since that removal can no longer be reported.
+     */
+    private void addTombstone(String id) {
+        forgetTombstone(id);
+        if (removedCount == MAX_TOMBSTONES) {
+            diffFloor = removedAt[0];
+            dropTombstone(0);
+        }
+        removedIds[removedCount] = id;
+        removedAt[removedCount] = version;
+        removedCount++;
+    }
+
+    private void forgetTombstone(String id) {
+        for (int t = 0; t < removedCount; t++) {
+            if (removedIds[t].equals(id)) {
+                dropTombstone(t);
+                return;
+            }
+        }
+    }
+
+    private void dropTombstone(int t) {
+        int tail = removedCount - t - 1;
+        if (tail > 0) {
+            System.arraycopy(removedIds, t + 1, removedIds, t, tail);
+            System.arraycopy(removedAt, t + 1, removedAt, t, tail);
+        }
+        removedCount--;
+        removedIds[removedCount] = null;
+    }
+
+    private void allocate(int capacity) {
+        ids = new String[capacity];
+        titles = new String[capacity];
+        quantities = new int[capacity];
+        priceCents = new int[capacity];
+        lineVersions = new long[capacity];
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        priceCents = Arrays.copyOf(priceCents, capacity);
+        lineVersions = Arrays.copyOf(lineVersions, capacity);
+    }
+
+    /**
+     * Writes the version and lines in the compact form used for session serialization and
+     * by {@link JdbcCartStore}; read back with {@link #readFrom}.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(version);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(ids[i]);
+            out.writeUTF(titles[i] == null ? "" : titles[i]);
+            out.writeInt(quantities[i]);
+            out.writeInt(priceCents[i]);
+        }
+    }
+
+    public static Cart readFrom(DataInput in) throws IOException {
+        Cart cart = new Cart();
+        cart.readFields(in);
+        return cart;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + size * 48);
+        try {
+            writeTo(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Cart fromBytes(byte[] bytes) throws IOException {
+        return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private void readFields(DataInput in) throws IOException {
+        long v = in.readLong();
+        if (v >>> COUNTER_BITS == 0) v = newEpoch(); // written before versions carried an epoch
+        int n = in.readInt();
+        if (n < 0) throw new InvalidObjectException("negative cart size " + n);
+        allocate(Math.max(INITIAL_CAPACITY, n));
+        for (int i = 0; i < n; i++) {
+            ids[i] = in.readUTF();
+            titles[i] = in.readUTF();
+            quantities[i] = in.readInt();
+            priceCents[i] = in.readInt();
+            lineVersions[i] = v;
+        }
+        size = n;
+        version = v;
+        diffFloor = v;
+        removedIds = new String[MAX_TOMBSTONES];
+        removedAt = new long[MAX_TOMBSTONES];
+        removedCount = 0;
+    }
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        writeTo(out);
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        readFields(in);
+    }
+}
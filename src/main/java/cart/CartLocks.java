@@ -0,0 +1,46 @@
+package cart;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed pool of locks striped by cart id ({@link CartStore#cartId}), guarding each {@link Cart}.
+ * <p>
+ * Holding the stripe covers the whole read-modify-write of a request: looking the cart up
+ * (or creating it), mutating it, saving it and rendering the response. So parallel requests
+ * for one cart serialize, and unrelated carts contend only when they hash to the same stripe.
+ * No lock objects are stored with the cart, so nothing extra is serialized with it.
+ * The locks are per JVM; {@link JdbcCartStore} documents what that means across nodes.
+ */
+public final class CartLocks {
+    private static final int DEFAULT_STRIPES = 256;
+
+    private static final CartLocks SHARED = new CartLocks(DEFAULT_STRIPES);
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes rounded up to a power of two
+     */
+    public CartLocks(int stripes) {
+        int n = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        locks = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = n - 1;
+    }
+
+    public static CartLocks shared() {
+        return SHARED;
+    }
+
+    public ReentrantLock forCart(String cartId) {
+        int h = cartId.hashCode();
+        return locks[(h ^ (h >>> 16)) & mask];
+    }
+
+    public int stripes() {
+        return locks.length;
+    }
+}
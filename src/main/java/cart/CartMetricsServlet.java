@@ -0,0 +1,87 @@
+package cart;
+
+import com.google.gson.stream.JsonWriter;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import utils.MetricsAccess;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Session and cart memory figures from {@link CartSessionMonitor#snapshot()} plus the state
+ * of the configured {@link CartStore}. Byte counts are estimates of retained heap, not
+ * measurements. Off unless {@link MetricsAccess} allows the client.
+ */
+@WebServlet(name = "CartMetricsServlet", urlPatterns = "/api/metrics/carts")
+public class CartMetricsServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!MetricsAccess.allowed(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        CartSessionMonitor.Snapshot s = CartSessionMonitor.snapshot();
+        CartStore store = CartStores.current();
+
+        StringWriter body = new StringWriter();
+        JsonWriter jw = new JsonWriter(body);
+        jw.beginObject();
+
+        jw.name("sessions").beginObject();
+        jw.name("active").value(s.activeSessions());
+        jw.name("created").value(s.createdSessions());
+        jw.name("destroyed").value(s.destroyedSessions());
+        jw.name("withCart").value(s.sessionsWithCart());
+        jw.name("estimatedBytes").value(s.sessionBytes());
+        jw.name("avgBytes").value(s.activeSessions() == 0 ? 0 : s.sessionBytes() / s.activeSessions());
+        jw.name("maxBytes").value(s.maxSessionBytes());
+        writeHistogram(jw, "bytesHistogram", CartSessionMonitor.BYTE_BUCKETS, s.sessionBytesHistogram());
+        jw.endObject();
+
+        jw.name("carts").beginObject();
+        jw.name("estimatedBytes").value(s.cartBytes());
+        writeHistogram(jw, "linesHistogram", CartSessionMonitor.COUNT_BUCKETS, s.linesHistogram());
+        writeHistogram(jw, "itemsHistogram", CartSessionMonitor.COUNT_BUCKETS, s.itemsHistogram());
+        jw.endObject();
+
+        jw.name("store").beginObject();
+        jw.name("type").value(store.getClass().getSimpleName());
+        if (store instanceof ShardedMemoryCartStore memory) {
+            jw.name("carts").value(memory.size());
+        } else if (store instanceof JdbcCartStore jdbc) {
+            jw.name("pendingWrites").value(jdbc.pendingWrites());
+        }
+        jw.endObject();
+
+        jw.name("idlePolicy").beginObject();
+        jw.name("trimAfterMillis").value(s.trimMillis());
+        jw.name("evictAfterMillis").value(s.evictMillis());
+        jw.name("trimmed").value(s.trimmedCarts());
+        jw.name("trimmedBytes").value(s.trimmedBytes());
+        jw.name("evicted").value(s.evictedCarts());
+        jw.endObject();
+
+        jw.endObject();
+        jw.flush();
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(body.toString());
+    }
+
+    // {"<=0": n, "<=1": n, ..., ">31": n}
+    private static void writeHistogram(JsonWriter jw, String name, int[] bounds, long[] counts) throws IOException {
+        jw.name(name).beginObject();
+        for (int i = 0; i < bounds.length; i++) {
+            jw.name("<=" + bounds[i]).value(counts[i]);
+        }
+        jw.name(">" + bounds[bounds.length - 1]).value(counts[bounds.length]);
+        jw.endObject();
+    }
+}
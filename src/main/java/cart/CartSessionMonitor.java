@@ -0,0 +1,244 @@
+package cart;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpSessionAttributeListener;
+import jakarta.servlet.http.HttpSessionBindingEvent;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Tracks live sessions so cart memory can be measured ({@link #snapshot()}, served by
+ * {@link CartMetricsServlet}) and bounded before the container's session timeout.
+ * <p>
+ * Once a minute, session-held carts (the {@link SessionCartStore}) in sessions idle past
+ * {@code cart.idleTrimMinutes} (default 10) are trimmed: arrays shrunk to size, tombstones
+ * dropped. Past {@code cart.idleEvictMinutes} (default 20) the cart is removed from the
+ * session. 0 disables either step. The other stores evict idle carts themselves.
+ * <p>
+ * Sessions are registered when created, and also when a cart is bound to them. That second
+ * path catches sessions the container restored from disk after a restart. Only weak
+ * references are kept, so a session the container has dropped or swapped out without a
+ * destroy event is not held in memory here; cleared entries are pruned on each walk.
+ */
+@WebListener
+public class CartSessionMonitor implements ServletContextListener, HttpSessionListener, HttpSessionAttributeListener {
+    private static final long DEFAULT_TRIM_MINUTES = 10;
+    private static final long DEFAULT_EVICT_MINUTES = 20;
+
+    /** Upper bounds (inclusive) of the histogram buckets; the last bucket is open-ended. */
+    static final int[] COUNT_BUCKETS = {0, 1, 3, 7, 15, 31};
+    static final int[] BYTE_BUCKETS = {1 << 10, 4 << 10, 16 << 10, 64 << 10};
+
+    // rough per-attribute cost when the value's size is unknown
+    private static final int ATTRIBUTE_BYTES = 64;
+    private static final int STRING_BYTES = 40;
+
+    private static final Map<String, WeakReference<HttpSession>> sessions = new ConcurrentHashMap<>();
+    private static final LongAdder created = new LongAdder();
+    private static final LongAdder destroyed = new LongAdder();
+    private static final LongAdder trimmed = new LongAdder();
+    private static final LongAdder trimmedBytes = new LongAdder();
+    private static final LongAdder evicted = new LongAdder();
+
+    private static volatile long trimMillis = TimeUnit.MINUTES.toMillis(DEFAULT_TRIM_MINUTES);
+    private static volatile long evictMillis = TimeUnit.MINUTES.toMillis(DEFAULT_EVICT_MINUTES);
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Point-in-time view of sessions and their carts; histograms use {@link #COUNT_BUCKETS}
+     * (lines and items per cart) and {@link #BYTE_BUCKETS} (estimated bytes per session).
+     */
+    public record Snapshot(int activeSessions, long createdSessions, long destroyedSessions,
+                           int sessionsWithCart, long[] linesHistogram, long[] itemsHistogram,
+                           long cartBytes, long sessionBytes, long maxSessionBytes, long[] sessionBytesHistogram,
+                           long trimMillis, long evictMillis, long trimmedCarts, long trimmedBytes, long evictedCarts) {
+    }
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        trimMillis = TimeUnit.MINUTES.toMillis(minutesParam(sce, "cart.idleTrimMinutes", DEFAULT_TRIM_MINUTES));
+        evictMillis = TimeUnit.MINUTES.toMillis(minutesParam(sce, "cart.idleEvictMinutes", DEFAULT_EVICT_MINUTES));
+        if (trimMillis == 0 && evictMillis == 0) return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cart-idle-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(CartSessionMonitor::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (scheduler != null) scheduler.shutdownNow();
+        sessions.clear();
+    }
+
+    @Override
+    public void sessionCreated(HttpSessionEvent se) {
+        created.increment();
+        sessions.put(se.getSession().getId(), new WeakReference<>(se.getSession()));
+    }
+
+    @Override
+    public void sessionDestroyed(HttpSessionEvent se) {
+        destroyed.increment();
+        sessions.remove(se.getSession().getId());
+    }
+
+    @Override
+    public void attributeAdded(HttpSessionBindingEvent event) {
+        if (Cart.SESSION_ATTRIBUTE.equals(event.getName())) {
+            HttpSession session = event.getSession();
+            sessions.compute(session.getId(),
+                    (id, ref) -> ref != null && ref.get() == session ? ref : new WeakReference<>(session));
+        }
+    }
+
+    @Override
+    public void attributeReplaced(HttpSessionBindingEvent event) {
+        attributeAdded(event);
+    }
+
+    /**
+     * Trims, then evicts, carts of sessions idle past the configured limits.
+     */
+    static void sweep() {
+        long now = System.currentTimeMillis();
+        for (HttpSession session : live()) {
+            try {
+                long idle = now - session.getLastAccessedTime();
+                boolean evict = evictMillis > 0 && idle > evictMillis;
+                boolean trim = trimMillis > 0 && idle > trimMillis;
+                if (!evict && !trim) continue;
+
+                Lock lock = CartLocks.shared().forCart(session.getId());
+                lock.lock();
+                try {
+                    Cart cart = Cart.get(session);
+                    if (cart == null) continue;
+                    if (evict) {
+                        session.removeAttribute(Cart.SESSION_ATTRIBUTE);
+                        evicted.increment();
+                    } else {
+                        long released = cart.trimToSize();
+                        if (released > 0) {
+                            trimmed.increment();
+                            trimmedBytes.add(released);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } catch (IllegalStateException e) {
+                sessions.remove(session.getId()); // invalidated meanwhile
+            }
+        }
+    }
+
+    /**
+     * Walks every tracked session, locking each cart's stripe briefly; cost is linear in
+     * the number of sessions, so this is meant for an occasional metrics scrape.
+     */
+    public static Snapshot snapshot() {
+        long[] lines = new long[COUNT_BUCKETS.length + 1];
+        long[] items = new long[COUNT_BUCKETS.length + 1];
+        long[] bytesHistogram = new long[BYTE_BUCKETS.length + 1];
+        int active = 0;
+        int withCart = 0;
+        long cartBytes = 0;
+        long sessionBytes = 0;
+        long maxSessionBytes = 0;
+
+        for (HttpSession session : live()) {
+            try {
+                long bytes = 0;
+                Enumeration<String> names = session.getAttributeNames();
+                while (names.hasMoreElements()) {
+                    String name = names.nextElement();
+                    if (Cart.SESSION_ATTRIBUTE.equals(name)) continue;
+                    bytes += STRING_BYTES + name.length() + estimate(session.getAttribute(name));
+                }
+
+                Lock lock = CartLocks.shared().forCart(session.getId());
+                lock.lock();
+                try {
+                    Cart cart = Cart.get(session);
+                    if (cart != null) {
+                        long b = cart.estimatedBytes();
+                        withCart++;
+                        cartBytes += b;
+                        bytes += b;
+                        lines[bucket(COUNT_BUCKETS, cart.size())]++;
+                        items[bucket(COUNT_BUCKETS, cart.totalQuantity())]++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                active++;
+                sessionBytes += bytes;
+                maxSessionBytes = Math.max(maxSessionBytes, bytes);
+                bytesHistogram[bucket(BYTE_BUCKETS, bytes)]++;
+            } catch (IllegalStateException e) {
+                sessions.remove(session.getId());
+            }
+        }
+
+        return new Snapshot(active, created.sum(), destroyed.sum(), withCart, lines, items,
+                cartBytes, sessionBytes, maxSessionBytes, bytesHistogram,
+                trimMillis, evictMillis, trimmed.sum(), trimmedBytes.sum(), evicted.sum());
+    }
+
+    // tracked sessions still reachable; drops the entries whose session was collected
+    private static List<HttpSession> live() {
+        List<HttpSession> live = new ArrayList<>(sessions.size());
+        for (Map.Entry<String, WeakReference<HttpSession>> e : sessions.entrySet()) {
+            HttpSession session = e.getValue().get();
+            if (session == null) {
+                sessions.remove(e.getKey(), e.getValue()); // unless re-registered meanwhile
+            } else {
+                live.add(session);
+            }
+        }
+        return live;
+    }
+
+    private static long estimate(Object value) {
+        if (value instanceof Cart cart) return cart.estimatedBytes();
+        if (value instanceof String s) return STRING_BYTES + s.length();
+        return ATTRIBUTE_BYTES;
+    }
+
+    private static int bucket(int[] bounds, long value) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (value <= bounds[i]) return i;
+        }
+        return bounds.length;
+    }
+
+    private static long minutesParam(ServletContextEvent sce, String name, long def) {
+        String v = sce.getServletContext().getInitParameter(name);
+        try {
+            return (v == null || v.isBlank()) ? def : Math.max(0, Long.parseLong(v.trim()));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package cart;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Where carts live between requests. The configured instance comes from {@link CartStores#current()}.
+ * <p>
+ * Callers resolve the request's {@link #cartId}, take its {@link CartLocks} stripe, then
+ * {@link #load}, mutate and {@link #save} (or {@link #remove}) while holding it. A loaded cart
+ * may be the store's live instance, so it must not be touched after the lock is released.
+ */
+public interface CartStore {
+
+    /**
+     * Identifies the request's cart, minting an id (and whatever carries it to the client)
+     * when {@code create} is true. Call before anything is written to the response.
+     *
+     * @return the cart id, or null when the request has none and {@code create} is false
+     */
+    String cartId(HttpServletRequest request, HttpServletResponse response, boolean create);
+
+    /**
+     * @return the cart, or null when there is none
+     */
+    Cart load(HttpServletRequest request, String cartId);
+
+    void save(HttpServletRequest request, String cartId, Cart cart);
+
+    void remove(HttpServletRequest request, String cartId);
+
+    /**
+     * Takes {@code purchased}'s lines out of the stored cart if it still holds all of them
+     * ({@link Cart#covers}), so a second checkout of the same lines finds them gone. Call
+     * while holding the cart's {@link CartLocks} stripe. This default is atomic only within
+     * one JVM; stores shared by several nodes override it.
+     *
+     * @return false when the cart is gone or no longer covers {@code purchased}
+     */
+    default boolean reserve(HttpServletRequest request, String cartId, Cart purchased) {
+        Cart stored = load(request, cartId);
+        if (stored == null || !stored.covers(purchased)) return false;
+        stored.subtract(purchased);
+        if (stored.isEmpty()) {
+            remove(request, cartId);
+        } else {
+            save(request, cartId, stored);
+        }
+        return true;
+    }
+
+    /**
+     * Flushes pending writes and stops background work; called on undeploy.
+     */
+    default void close() {
+    }
+}
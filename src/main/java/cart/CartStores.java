@@ -0,0 +1,109 @@
+package cart;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Chooses the {@link CartStore} from the {@code cart.store} context parameter and runs its
+ * background work:
+ * <ul>
+ *   <li>{@code session} (default): {@link SessionCartStore}</li>
+ *   <li>{@code memory}: {@link ShardedMemoryCartStore}; idle carts are swept every minute</li>
+ *   <li>{@code jdbc}: {@link JdbcCartStore}; pending writes are flushed every
+ *       {@code cart.flushMillis} and idle rows purged every ten minutes</li>
+ * </ul>
+ * {@code cart.idleMinutes} (default 30, like the container session timeout) bounds how long an
+ * untouched cart is kept by the memory and JDBC stores. If the JDBC store cannot be set up,
+ * the session store is used instead.
+ */
+@WebListener
+public class CartStores implements ServletContextListener {
+    private static final long DEFAULT_IDLE_MINUTES = 30;
+    private static final long DEFAULT_FLUSH_MILLIS = 200;
+    private static final int MEMORY_SHARDS = 64;
+    private static final int MEMORY_MAX_CARTS = 200_000;
+
+    private static volatile CartStore current = new SessionCartStore();
+
+    private ScheduledExecutorService scheduler;
+
+    public static CartStore current() {
+        return current;
+    }
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        String kind = sce.getServletContext().getInitParameter("cart.store");
+        kind = kind == null || kind.isBlank() ? "session" : kind.trim();
+        long idleMillis = TimeUnit.MINUTES.toMillis(longParam(sce, "cart.idleMinutes", DEFAULT_IDLE_MINUTES));
+
+        switch (kind) {
+            case "memory" -> {
+                ShardedMemoryCartStore store = new ShardedMemoryCartStore(MEMORY_SHARDS, idleMillis, MEMORY_MAX_CARTS);
+                scheduler = newScheduler();
+                scheduler.scheduleWithFixedDelay(store::evictIdle, 1, 1, TimeUnit.MINUTES);
+                current = store;
+            }
+            case "jdbc" -> {
+                JdbcCartStore store;
+                try {
+                    DataSource dataSource = (DataSource) new InitialContext().lookup("java:comp/env/jdbc/my_data_source");
+                    store = new JdbcCartStore(dataSource, TimeUnit.MILLISECONDS.toSeconds(idleMillis));
+                    store.createTable();
+                } catch (NamingException | SQLException e) {
+                    System.err.println("CartStores: JDBC cart store unavailable, using sessions: " + e.getMessage());
+                    return;
+                }
+                long flushMillis = longParam(sce, "cart.flushMillis", DEFAULT_FLUSH_MILLIS);
+                scheduler = newScheduler();
+                scheduler.scheduleWithFixedDelay(store::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+                scheduler.scheduleWithFixedDelay(store::purgeIdle, 10, 10, TimeUnit.MINUTES);
+                current = store;
+            }
+            case "session" -> current = new SessionCartStore();
+            default -> System.err.println("CartStores: unknown cart.store '" + kind + "', using sessions");
+        }
+        System.out.println("CartStores: using " + current.getClass().getSimpleName());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        current.close();
+        current = new SessionCartStore();
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cart-store");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static long longParam(ServletContextEvent sce, String name, long def) {
+        String v = sce.getServletContext().getInitParameter(name);
+        try {
+            return (v == null || v.isBlank()) ? def : Math.max(1, Long.parseLong(v.trim()));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
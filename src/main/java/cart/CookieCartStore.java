@@ -0,0 +1,76 @@
+package cart;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.security.SecureRandom;
+import java.util.HexFormat;
+
+/**
+ * Base for stores keyed independently of the container session: the cart id is a random
+ * 128-bit hex token in the {@value #COOKIE_NAME} cookie, so any node can find the cart.
+ */
+abstract class CookieCartStore implements CartStore {
+    static final String COOKIE_NAME = "CARTID";
+    private static final int ID_BYTES = 16;
+    private static final int COOKIE_MAX_AGE_SECONDS = 30 * 24 * 3600;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    abstract Cart load(String cartId);
+
+    abstract void save(String cartId, Cart cart);
+
+    abstract void remove(String cartId);
+
+    @Override
+    public String cartId(HttpServletRequest request, HttpServletResponse response, boolean create) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE_NAME.equals(cookie.getName()) && isValidId(cookie.getValue())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        if (!create) return null;
+
+        byte[] raw = new byte[ID_BYTES];
+        RANDOM.nextBytes(raw);
+        String id = HexFormat.of().formatHex(raw);
+        Cookie cookie = new Cookie(COOKIE_NAME, id);
+        cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setMaxAge(COOKIE_MAX_AGE_SECONDS);
+        cookie.setAttribute("SameSite", "Lax");
+        response.addCookie(cookie);
+        return id;
+    }
+
+    @Override
+    public Cart load(HttpServletRequest request, String cartId) {
+        return load(cartId);
+    }
+
+    @Override
+    public void save(HttpServletRequest request, String cartId, Cart cart) {
+        save(cartId, cart);
+    }
+
+    @Override
+    public void remove(HttpServletRequest request, String cartId) {
+        remove(cartId);
+    }
+
+    // only ids this class minted, so a forged cookie cannot probe arbitrary keys
+    private static boolean isValidId(String value) {
+        if (value == null || value.length() != ID_BYTES * 2) return false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,289 @@
+package cart;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+/**
+ * Carts in the {@code cart_store} table, keyed by the {@code CARTID} cookie, so any node can
+ * serve any cart without sticky sessions.
+ * <p>
+ * Writes are coalesced. {@link #save} only records the cart's bytes as the pending write for
+ * its id, replacing any earlier pending write. {@link #flush()}, run every few hundred
+ * milliseconds, upserts all pending carts in one batch, so a burst of edits to a cart costs
+ * one row write. Reads check this node's pending and in-flight writes before the table, so a
+ * node always sees its own latest edits.
+ * <p>
+ * {@link CartLocks} are per JVM. Two nodes editing one cart at the same moment are not
+ * serialized. The upsert keeps whichever write carries the higher {@link Cart#version()},
+ * so a delayed flush never rolls a cart back, but one of two concurrent edits can be lost.
+ * Within the flush interval, another node may still read the previous state.
+ * <p>
+ * Checkout cannot live with that, so {@link #reserve} bypasses the queue. It writes this
+ * node's pending edit, then reads the row {@code FOR UPDATE}, takes the purchased lines out and
+ * writes it back in one transaction. Two nodes confirming the same cart serialize on the row
+ * lock, and the second finds the lines gone. An emptied cart is stored as an empty row, not
+ * deleted, so the version guard still turns away older queued writes.
+ */
+public final class JdbcCartStore extends CookieCartStore {
+    static final String CREATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS cart_store (
+              cart_id CHAR(32) NOT NULL PRIMARY KEY,
+              version BIGINT NOT NULL,
+              body MEDIUMBLOB NOT NULL,
+              updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+              KEY idx_cart_store_updated (updated_at)
+            )
+            """;
+    private static final String SELECT_SQL = "SELECT body FROM cart_store WHERE cart_id = ?";
+    // body is assigned before version, so the IF still compares against the stored version
+    private static final String UPSERT_SQL = """
+            INSERT INTO cart_store (cart_id, version, body) VALUES (?, ?, ?)
+            ON DUPLICATE KEY UPDATE
+              body = IF(VALUES(version) >= version, VALUES(body), body),
+              version = GREATEST(version, VALUES(version))
+            """;
+    private static final String DELETE_SQL = "DELETE FROM cart_store WHERE cart_id = ?";
+    private static final String LOCK_SQL = "SELECT body FROM cart_store WHERE cart_id = ? FOR UPDATE";
+    private static final String UPDATE_SQL = "UPDATE cart_store SET version = ?, body = ? WHERE cart_id = ?";
+    private static final String PURGE_SQL = "DELETE FROM cart_store WHERE updated_at < NOW() - INTERVAL ? SECOND";
+
+    /**
+     * A pending write; a null body deletes the row. {@code replace} marks a new cart saved over
+     * a pending delete: its version has a new random epoch, unrelated to the old row's, so the
+     * old row must go before the insert or the version guard could keep it.
+     */
+    private record Pending(long version, byte[] body, boolean replace) {
+        /** True when this write removes the stored row, so a later write must too. */
+        boolean dropsRow() {
+            return body == null || replace;
+        }
+
+        Pending asReplace() {
+            return body == null || replace ? this : new Pending(version, body, true);
+        }
+    }
+
+    private final DataSource dataSource;
+    private final long idleSeconds;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<String, Pending> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param idleSeconds rows not written for this long are removed by {@link #purgeIdle()}
+     */
+    public JdbcCartStore(DataSource dataSource, long idleSeconds) {
+        this.dataSource = dataSource;
+        this.idleSeconds = idleSeconds;
+    }
+
+    /**
+     * Creates the table when it does not exist yet.
+     */
+    public void createTable() throws SQLException {
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            st.execute(CREATE_TABLE_SQL);
+        }
+    }
+
+    @Override
+    Cart load(String cartId) {
+        Pending p = pending.get(cartId);
+        if (p == null) p = inFlight.get(cartId);
+        try {
+            if (p != null) return p.body() == null ? null : Cart.fromBytes(p.body());
+
+            try (Connection c = dataSource.getConnection(); PreparedStatement ps = c.prepareStatement(SELECT_SQL)) {
+                ps.setString(1, cartId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? Cart.fromBytes(rs.getBytes(1)) : null;
+                }
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Failed to load cart " + cartId, e);
+        }
+    }
+
+    @Override
+    void save(String cartId, Cart cart) {
+        byte[] body = cart.toBytes();
+        pending.compute(cartId, (id, prev) -> {
+            // a delete being flushed right now may still fail and be re-queued behind this write
+            Pending before = prev != null ? prev : inFlight.get(id);
+            return new Pending(cart.version(), body, before != null && before.dropsRow());
+        });
+    }
+
+    @Override
+    void remove(String cartId) {
+        pending.put(cartId, new Pending(Long.MAX_VALUE, null, false));
+    }
+
+    /**
+     * Write-through and atomic across nodes; see the class comment. Synchronized with
+     * {@link #flush()}, so no write of this node is in flight meanwhile.
+     *
+     * @throws IllegalStateException when the database cannot be reached; nothing is reserved
+     */
+    @Override
+    public synchronized boolean reserve(HttpServletRequest request, String cartId, Cart purchased) {
+        Pending local = pending.remove(cartId);
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                if (local != null) write(c, cartId, local);
+                Cart stored;
+                try (PreparedStatement ps = c.prepareStatement(LOCK_SQL)) {
+                    ps.setString(1, cartId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        stored = rs.next() ? Cart.fromBytes(rs.getBytes(1)) : null;
+                    }
+                }
+                boolean reserved = stored != null && stored.covers(purchased);
+                if (reserved) {
+                    stored.subtract(purchased);
+                    try (PreparedStatement ps = c.prepareStatement(UPDATE_SQL)) {
+                        ps.setLong(1, stored.version());
+                        ps.setBytes(2, stored.toBytes());
+                        ps.setString(3, cartId);
+                        ps.executeUpdate();
+                    }
+                }
+                c.commit();
+                local = null;
+                return reserved;
+            } catch (SQLException | IOException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Failed to reserve cart " + cartId, e);
+        } finally {
+            if (local != null) requeue(cartId, local);
+        }
+    }
+
+    /**
+     * Writes every pending cart in one transaction. Failed writes are re-queued unless a newer
+     * write for the same cart arrived in the meantime; if the failed write removed the row, the
+     * newer one is turned into a replace so the old row still goes.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) return;
+
+        List<String> ids = new ArrayList<>(pending.keySet());
+        List<String> batchIds = new ArrayList<>(ids.size());
+        List<Pending> batch = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            // in flight before it leaves pending, so load() and save() always see it somewhere
+            Pending p = pending.get(id);
+            if (p == null) continue;
+            inFlight.put(id, p);
+            if (!pending.remove(id, p)) { // superseded meanwhile; the newer write goes next time
+                inFlight.remove(id, p);
+                continue;
+            }
+            batchIds.add(id);
+            batch.add(p);
+        }
+
+        boolean written = false;
+        try (Connection c = dataSource.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement upsert = c.prepareStatement(UPSERT_SQL);
+                 PreparedStatement delete = c.prepareStatement(DELETE_SQL)) {
+                int upserts = 0;
+                int deletes = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    Pending p = batch.get(i);
+                    if (p.body() == null || p.replace()) {
+                        delete.setString(1, batchIds.get(i));
+                        delete.addBatch();
+                        deletes++;
+                    }
+                    if (p.body() != null) {
+                        upsert.setString(1, batchIds.get(i));
+                        upsert.setLong(2, p.version());
+                        upsert.setBytes(3, p.body());
+                        upsert.addBatch();
+                        upserts++;
+                    }
+                }
+                if (deletes > 0) delete.executeBatch();
+                if (upserts > 0) upsert.executeBatch();
+                c.commit();
+                written = true;
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.err.println("JdbcCartStore: flush of " + batch.size() + " carts failed, will retry: " + e.getMessage());
+        } finally {
+            for (int i = 0; i < batch.size(); i++) {
+                String id = batchIds.get(i);
+                Pending p = batch.get(i);
+                if (!written) requeue(id, p);
+                inFlight.remove(id, p);
+            }
+        }
+    }
+
+    // a newer write wins, but must still remove the row if the failed one would have
+    private void requeue(String cartId, Pending failed) {
+        pending.merge(cartId, failed, (newer, f) -> f.dropsRow() ? newer.asReplace() : newer);
+    }
+
+    // one pending write, outside the batch
+    private static void write(Connection c, String cartId, Pending p) throws SQLException {
+        if (p.dropsRow()) {
+            try (PreparedStatement delete = c.prepareStatement(DELETE_SQL)) {
+                delete.setString(1, cartId);
+                delete.executeUpdate();
+            }
+        }
+        if (p.body() != null) {
+            try (PreparedStatement upsert = c.prepareStatement(UPSERT_SQL)) {
+                upsert.setString(1, cartId);
+                upsert.setLong(2, p.version());
+                upsert.setBytes(3, p.body());
+                upsert.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Deletes rows not written for longer than the idle limit.
+     *
+     * @return rows removed
+     */
+    public int purgeIdle() {
+        try (Connection c = dataSource.getConnection(); PreparedStatement ps = c.prepareStatement(PURGE_SQL)) {
+            ps.setLong(1, idleSeconds);
+            return ps.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("JdbcCartStore: idle purge failed: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    public int pendingWrites() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
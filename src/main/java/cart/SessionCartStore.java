@@ -0,0 +1,36 @@
+package cart;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Keeps the cart as the {@link Cart#SESSION_ATTRIBUTE} session attribute, keyed by session id.
+ * Surviving a node change needs sticky sessions or container session replication.
+ */
+public final class SessionCartStore implements CartStore {
+
+    @Override
+    public String cartId(HttpServletRequest request, HttpServletResponse response, boolean create) {
+        HttpSession session = request.getSession(create);
+        return session == null ? null : session.getId();
+    }
+
+    @Override
+    public Cart load(HttpServletRequest request, String cartId) {
+        HttpSession session = request.getSession(false);
+        return session == null ? null : Cart.get(session);
+    }
+
+    @Override
+    public void save(HttpServletRequest request, String cartId, Cart cart) {
+        // Re-set even when unchanged in identity so replicating session managers see the change
+        request.getSession().setAttribute(Cart.SESSION_ATTRIBUTE, cart);
+    }
+
+    @Override
+    public void remove(HttpServletRequest request, String cartId) {
+        HttpSession session = request.getSession(false);
+        if (session != null) session.removeAttribute(Cart.SESSION_ATTRIBUTE);
+    }
+}
@@ -0,0 +1,129 @@
+package cart;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Node-local carts keyed by the {@code CARTID} cookie, outside the container session so they
+ * add nothing to session replication. The map is split into shards, each guarded by its own
+ * monitor and kept in access order. So {@link #evictIdle()} only walks the cold end of each
+ * shard, and a full shard drops its least recently used cart.
+ * <p>
+ * Carts do not survive a node change; use {@link JdbcCartStore} when requests are not sticky.
+ */
+public final class ShardedMemoryCartStore extends CookieCartStore {
+
+    private static final class Entry {
+        Cart cart;
+        long lastAccess;
+
+        Entry(Cart cart, long lastAccess) {
+            this.cart = cart;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry>[] shards;
+    private final int mask;
+    private final long idleMillis;
+    private final int maxPerShard;
+
+    /**
+     * @param shardCount rounded up to a power of two
+     * @param idleMillis carts untouched for this long are dropped
+     * @param maxCarts   total capacity, split evenly across shards
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"}) // generic array creation
+    public ShardedMemoryCartStore(int shardCount, long idleMillis, int maxCarts) {
+        int n = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+        shards = new LinkedHashMap[n];
+        for (int i = 0; i < n; i++) {
+            shards[i] = new LinkedHashMap<>(64, 0.75f, true);
+        }
+        mask = n - 1;
+        this.idleMillis = idleMillis;
+        this.maxPerShard = Math.max(1, maxCarts / n);
+    }
+
+    @Override
+    Cart load(String cartId) {
+        LinkedHashMap<String, Entry> shard = shard(cartId);
+        long now = System.currentTimeMillis();
+        synchronized (shard) {
+            Entry e = shard.get(cartId);
+            if (e == null) return null;
+            if (now - e.lastAccess > idleMillis) {
+                shard.remove(cartId);
+                return null;
+            }
+            e.lastAccess = now;
+            return e.cart;
+        }
+    }
+
+    @Override
+    void save(String cartId, Cart cart) {
+        LinkedHashMap<String, Entry> shard = shard(cartId);
+        long now = System.currentTimeMillis();
+        synchronized (shard) {
+            Entry e = shard.get(cartId);
+            if (e != null) {
+                e.cart = cart;
+                e.lastAccess = now;
+                return;
+            }
+            shard.put(cartId, new Entry(cart, now));
+            if (shard.size() > maxPerShard) {
+                Iterator<String> eldest = shard.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    @Override
+    void remove(String cartId) {
+        LinkedHashMap<String, Entry> shard = shard(cartId);
+        synchronized (shard) {
+            shard.remove(cartId);
+        }
+    }
+
+    /**
+     * Drops carts idle longer than the configured limit.
+     *
+     * @return how many were dropped
+     */
+    public int evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        int evicted = 0;
+        for (LinkedHashMap<String, Entry> shard : shards) {
+            synchronized (shard) {
+                Iterator<Map.Entry<String, Entry>> it = shard.entrySet().iterator();
+                while (it.hasNext()) {
+                    // access order: the first fresh entry means the rest are fresh too
+                    if (it.next().getValue().lastAccess >= cutoff) break;
+                    it.remove();
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int n = 0;
+        for (LinkedHashMap<String, Entry> shard : shards) {
+            synchronized (shard) {
+                n += shard.size();
+            }
+        }
+        return n;
+    }
+
+    private LinkedHashMap<String, Entry> shard(String cartId) {
+        int h = cartId.hashCode();
+        return shards[(h ^ (h >>> 16)) & mask];
+    }
+}
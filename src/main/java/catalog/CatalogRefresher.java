@@ -0,0 +1,174 @@
+package catalog;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import browse.BrowseSnapshot;
+import search.FullTextQuery;
+import search.MovieBitmaps;
+import search.ResultCache;
+import search.SearchSnapshot;
+import search.TitleNgramIndex;
+import search.TitleSuggestIndex;
+import search.TopRankings;
+
+/**
+ * Loads the in-memory catalog structures at startup and keeps them current.
+ * Every {@code catalog.refreshSeconds} new movies are appended incrementally;
+ * every {@code catalog.reloadMinutes} everything is rebuilt from scratch so
+ * deletes and title edits are picked up too. The genre list snapshot is
+ * re-read on every tick (the table is tiny), and the price catalog is
+ * reloaded whenever its checksum changes.
+ * <p>
+ * Each full reload also probes for the FULLTEXT index on {@code movies.title}, as
+ * {@code search.fullText} says: {@code auto} (default) uses it when present,
+ * {@code create} adds it when missing, {@code off} never uses it.
+ */
+@WebListener
+public class CatalogRefresher implements ServletContextListener {
+    private static final long DEFAULT_REFRESH_SECONDS = 60;
+    private static final long DEFAULT_RELOAD_MINUTES = 60;
+
+    private DataSource dataSource;
+    private ScheduledExecutorService scheduler;
+    private String fullTextMode = "auto";
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            dataSource = (DataSource) new InitialContext().lookup("java:comp/env/jdbc/my_data_source");
+        } catch (NamingException e) {
+            System.err.println("CatalogRefresher: DataSource lookup failed, in-memory indexes disabled: " + e.getMessage());
+            return;
+        }
+
+        String mode = sce.getServletContext().getInitParameter("search.fullText");
+        if (mode != null && !mode.isBlank()) fullTextMode = mode.trim();
+        long refreshSeconds = longParam(sce, "catalog.refreshSeconds", DEFAULT_REFRESH_SECONDS);
+        long reloadMinutes = longParam(sce, "catalog.reloadMinutes", DEFAULT_RELOAD_MINUTES);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.execute(this::reload);
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::reload, reloadMinutes, reloadMinutes, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    private void reload() {
+        long start = System.nanoTime();
+        try (Connection c = dataSource.getConnection()) {
+            probeFullText(c);
+            BrowseSnapshot.refreshGenres(c);
+            refreshPrices(c, true);
+            MovieCatalog catalog = MovieCatalog.load(c);
+            TitleNgramIndex titles = TitleNgramIndex.build(catalog);
+            TopRankings rankings = TopRankings.load(c, catalog);
+            MovieBitmaps bitmaps = MovieBitmaps.load(c, catalog);
+            StarPopularity stars = StarPopularity.load(c);
+            // every ordinal changes meaning here, so the search structures switch in one write
+            SearchSnapshot.publish(new SearchSnapshot(catalog, titles, rankings, bitmaps));
+            publishSuggest(rankings);
+            StarPopularity.publish(stars);
+            ResultCache.shared().invalidateAll();
+            MovieDetailCache.shared().invalidateAll();
+            CatalogVersion.bump();
+            System.out.println("CatalogRefresher: loaded " + catalog.size() + " movies in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("CatalogRefresher: reload failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void refresh() {
+        try (Connection c = dataSource.getConnection()) {
+            if (BrowseSnapshot.refreshGenres(c)) System.out.println("CatalogRefresher: genre list changed");
+            // prices feed only the cart, not the search caches invalidated below
+            refreshPrices(c, false);
+            SearchSnapshot snap = SearchSnapshot.current();
+            MovieCatalog before = snap.catalog();
+            MovieCatalog after = before.refresh(c);
+            boolean ratingsChanged = snap.rankings().isStale(c);
+            StarPopularity stars = StarPopularity.current();
+            StarPopularity starsAfter = stars.refresh(c, before.maxId());
+            if (after == before && !ratingsChanged && starsAfter == stars) return;
+
+            TitleNgramIndex titles = snap.titles();
+            if (after != before) {
+                titles = titles.extend(after);
+                System.out.println("CatalogRefresher: added " + (after.size() - before.size()) + " movies");
+            }
+            TopRankings rankings = ratingsChanged ? TopRankings.load(c, after) : snap.rankings().extend(after);
+            MovieBitmaps bitmaps = after != before || ratingsChanged ? MovieBitmaps.load(c, after) : snap.bitmaps();
+            SearchSnapshot.publish(new SearchSnapshot(after, titles, rankings, bitmaps));
+            if (ratingsChanged) publishSuggest(rankings);
+            StarPopularity.publish(starsAfter);
+            ResultCache.shared().invalidateAll();
+            MovieDetailCache.shared().invalidateAll();
+            CatalogVersion.bump();
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("CatalogRefresher: refresh failed: " + e.getMessage());
+        }
+    }
+
+    // on its own: a schema without the index (or without information_schema access) must not stop the reload
+    private void probeFullText(Connection c) {
+        if ("off".equals(fullTextMode)) return;
+        try {
+            if (!FullTextQuery.probe(c, "create".equals(fullTextMode))) {
+                System.out.println("CatalogRefresher: no FULLTEXT index on movies.title, titles use the n-gram index;"
+                        + " add it with: " + FullTextQuery.INDEX_DDL);
+            }
+        } catch (SQLException e) {
+            System.err.println("CatalogRefresher: FULLTEXT probe failed, not using it: " + e.getMessage());
+        }
+    }
+
+    // on its own: a price table error must not stop the search structures, nor they the prices
+    private static void refreshPrices(Connection c, boolean full) {
+        try {
+            PriceCatalog prices = PriceCatalog.current();
+            PriceCatalog pricesAfter = full ? PriceCatalog.load(c) : prices.refresh(c);
+            if (pricesAfter != prices) {
+                PriceCatalog.publish(pricesAfter);
+                if (!full) System.out.println("CatalogRefresher: reloaded " + pricesAfter.size() + " movie prices");
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("CatalogRefresher: price " + (full ? "load" : "refresh") + " failed: " + e.getMessage());
+        }
+    }
+
+    // the suggest index scores titles by their rating rank, so it follows the rankings
+    private static void publishSuggest(TopRankings rankings) {
+        TitleSuggestIndex suggest = TitleSuggestIndex.build(rankings);
+        if (suggest != null) TitleSuggestIndex.publish(suggest);
+    }
+
+    private static long longParam(ServletContextEvent sce, String name, long def) {
+        String v = sce.getServletContext().getInitParameter(name);
+        try {
+            return (v == null || v.isBlank()) ? def : Math.max(1, Long.parseLong(v.trim()));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package catalog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter bumped by {@link CatalogRefresher} whenever it publishes changed catalog data.
+ * Seeded from the clock so a restart never reuses a version handed out before it.
+ */
+public final class CatalogVersion {
+    private static final AtomicLong VERSION = new AtomicLong(System.currentTimeMillis());
+
+    private CatalogVersion() {
+    }
+
+    public static long current() {
+        return VERSION.get();
+    }
+
+    static void bump() {
+        VERSION.incrementAndGet();
+    }
+}
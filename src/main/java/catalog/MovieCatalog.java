@@ -0,0 +1,102 @@
+package catalog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the movie ids and titles, addressed by a dense int "ordinal".
+ * Ordinals are append-only: a refresh only adds rows, so structures keyed by ordinal
+ * (e.g. posting lists) stay valid and sorted across snapshots.
+ */
+public final class MovieCatalog {
+    private static final String LOAD_SQL = "SELECT id, title FROM movies ORDER BY id";
+    private static final String DELTA_SQL = "SELECT id, title FROM movies WHERE id > ? ORDER BY id";
+
+    public static final MovieCatalog EMPTY = new MovieCatalog(new String[0], new String[0], 0, Map.of());
+
+    private final String[] ids;
+    private final String[] titles;
+    private final int size;
+    private final Map<String, Integer> ordinalById;
+
+    private MovieCatalog(String[] ids, String[] titles, int size, Map<String, Integer> ordinalById) {
+        this.ids = ids;
+        this.titles = titles;
+        this.size = size;
+        this.ordinalById = ordinalById;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String id(int ordinal) {
+        return ids[ordinal];
+    }
+
+    public String title(int ordinal) {
+        return titles[ordinal];
+    }
+
+    /**
+     * @return the ordinal for the movie id, or -1 when the id is not in this snapshot
+     */
+    public int ordinalOf(String id) {
+        Integer ord = ordinalById.get(id);
+        return ord == null ? -1 : ord;
+    }
+
+    public String maxId() {
+        return size == 0 ? null : ids[size - 1];
+    }
+
+    public static MovieCatalog load(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(LOAD_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            return EMPTY.append(rs);
+        }
+    }
+
+    /**
+     * Returns a snapshot extended with movies whose id sorts after {@link #maxId()},
+     * or {@code this} when nothing was added.
+     */
+    public MovieCatalog refresh(Connection c) throws SQLException {
+        if (size == 0) return load(c);
+        try (PreparedStatement ps = c.prepareStatement(DELTA_SQL)) {
+            ps.setString(1, maxId());
+            try (ResultSet rs = ps.executeQuery()) {
+                return append(rs);
+            }
+        }
+    }
+
+    private MovieCatalog append(ResultSet rs) throws SQLException {
+        String[] newIds = Arrays.copyOf(ids, Math.max(16, size + size / 2));
+        String[] newTitles = Arrays.copyOf(titles, newIds.length);
+        Map<String, Integer> newOrdinals = null;
+        int n = size;
+
+        while (rs.next()) {
+            if (newOrdinals == null) newOrdinals = new HashMap<>(ordinalById);
+            String id = rs.getString("id");
+            if (newOrdinals.containsKey(id)) continue;
+            if (n == newIds.length) {
+                newIds = Arrays.copyOf(newIds, n * 2);
+                newTitles = Arrays.copyOf(newTitles, n * 2);
+            }
+            newIds[n] = id;
+            newTitles[n] = rs.getString("title");
+            newOrdinals.put(id, n);
+            n++;
+        }
+
+        if (n == size) return this;
+        return new MovieCatalog(Arrays.copyOf(newIds, n), Arrays.copyOf(newTitles, n), n, newOrdinals);
+    }
+}
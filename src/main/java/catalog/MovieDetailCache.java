@@ -0,0 +1,82 @@
+package catalog;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte-bounded LRU of fully rendered {@code /api/movies/{id}} bodies keyed by movie id.
+ * <p>
+ * Every entry records the {@link #version()} that was current when its query started;
+ * {@link #invalidateAll()} just bumps the version, so a body rendered from data that
+ * changed mid-request is never served, and stale entries are dropped when next looked up.
+ */
+public final class MovieDetailCache {
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static final MovieDetailCache SHARED = new MovieDetailCache(DEFAULT_MAX_BYTES);
+
+    private record Entry(byte[] body, long version) {
+        int weight(String id) {
+            return body.length + id.length() * 2 + ENTRY_OVERHEAD;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLong version = new AtomicLong();
+    private long bytes;
+
+    public MovieDetailCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static MovieDetailCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Read before querying and pass to {@link #put} with the result.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * @return the cached body, or null on a miss or when the entry predates the current version
+     */
+    public byte[] get(String movieId) {
+        long v = version.get();
+        synchronized (map) {
+            Entry e = map.get(movieId);
+            if (e == null) return null;
+            if (e.version() == v) return e.body();
+            map.remove(movieId);
+            bytes -= e.weight(movieId);
+            return null;
+        }
+    }
+
+    public void put(String movieId, long builtAtVersion, byte[] body) {
+        if (builtAtVersion != version.get()) return;
+        Entry e = new Entry(body, builtAtVersion);
+        if (e.weight(movieId) > maxBytes / 8) return;
+        synchronized (map) {
+            Entry old = map.put(movieId, e);
+            if (old != null) bytes -= old.weight(movieId);
+            bytes += e.weight(movieId);
+            Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                bytes -= eldest.getValue().weight(eldest.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        version.incrementAndGet();
+    }
+}
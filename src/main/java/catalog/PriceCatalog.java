@@ -0,0 +1,234 @@
+package catalog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-movie prices in integer cents from {@code movie_prices(movie_id, price_cents)}, so the
+ * cart can price lines without a query. Movies without a row cost {@link #DEFAULT_PRICE_CENTS}.
+ * Snapshots are immutable open-addressing maps published through a volatile field, so reads
+ * take no lock.
+ * <p>
+ * {@link #refresh} compares a row count and checksum first and keeps the current snapshot
+ * when nothing changed. A missing table is treated as an empty one, so every movie gets
+ * the default price. Checkout does not trust the snapshot: it calls {@link #fetchPrices},
+ * one query for all of the cart's movies, and hands any newer prices it finds to
+ * {@link #amend} so the cart stops repricing from the stale snapshot before the next refresh.
+ */
+public final class PriceCatalog {
+    public static final int DEFAULT_PRICE_CENTS = 1000;
+
+    private static final String LOAD_SQL = "SELECT movie_id, price_cents FROM movie_prices";
+    private static final String CHECKSUM_SQL =
+            "SELECT COUNT(*), COALESCE(SUM(CRC32(CONCAT(movie_id, ':', price_cents))), 0) FROM movie_prices";
+    private static final String FETCH_SQL_PREFIX =
+            "SELECT m.id, p.price_cents FROM movies m LEFT JOIN movie_prices p ON p.movie_id = m.id WHERE m.id IN (";
+    private static final String IDS_SQL_PREFIX = "SELECT id FROM movies WHERE id IN (";
+    private static final String TABLE_NOT_FOUND = "42S02";
+
+    public static final PriceCatalog EMPTY = new PriceCatalog(new String[16], new int[16], 0, -1, false);
+
+    private static volatile PriceCatalog current = EMPTY;
+
+    private final String[] keys; // null = free slot; length is a power of two
+    private final int[] cents;
+    private final int size;
+    private final long checksum;
+    private final boolean loaded;
+
+    private PriceCatalog(String[] keys, int[] cents, int size, long checksum, boolean loaded) {
+        this.keys = keys;
+        this.cents = cents;
+        this.size = size;
+        this.checksum = checksum;
+        this.loaded = loaded;
+    }
+
+    public static PriceCatalog current() {
+        return current;
+    }
+
+    static synchronized void publish(PriceCatalog catalog) {
+        current = catalog;
+    }
+
+    /**
+     * Publishes a copy of the current snapshot with {@code prices} (as returned by
+     * {@link #fetchPrices}) applied. The copy matches no table checksum, so the next
+     * {@link #refresh} reloads the whole table. Does nothing before the first load.
+     */
+    public static synchronized void amend(Map<String, Integer> prices) {
+        PriceCatalog c = current;
+        if (!c.loaded) return;
+        boolean changed = false;
+        for (Map.Entry<String, Integer> e : prices.entrySet()) {
+            if (c.priceCents(e.getKey()) != e.getValue()) {
+                changed = true;
+                break;
+            }
+        }
+        if (changed) current = c.with(prices);
+    }
+
+    /**
+     * @return false until the first load finished; callers then keep the prices they have
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int priceCents(String movieId) {
+        if (movieId != null) {
+            int mask = keys.length - 1;
+            for (int i = movieId.hashCode() & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(movieId)) return cents[i];
+            }
+        }
+        return DEFAULT_PRICE_CENTS;
+    }
+
+    public static PriceCatalog load(Connection c) throws SQLException {
+        return load(c, checksum(c));
+    }
+
+    /**
+     * @return {@code this} when the table is unchanged
+     */
+    public PriceCatalog refresh(Connection c) throws SQLException {
+        long sum = checksum(c);
+        return loaded && sum == checksum ? this : load(c, sum);
+    }
+
+    /**
+     * Current prices straight from the database for the given movies, in one query.
+     *
+     * @return price in cents per movie id; ids that are not movies are absent
+     */
+    public static Map<String, Integer> fetchPrices(Connection c, List<String> movieIds) throws SQLException {
+        Map<String, Integer> prices = new HashMap<>(movieIds.size() * 2);
+        if (movieIds.isEmpty()) return prices;
+
+        try (PreparedStatement ps = c.prepareStatement(FETCH_SQL_PREFIX + placeholders(movieIds.size()))) {
+            for (int i = 0; i < movieIds.size(); i++) {
+                ps.setString(i + 1, movieIds.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int price = rs.getInt(2);
+                    prices.put(rs.getString(1), rs.wasNull() ? DEFAULT_PRICE_CENTS : price);
+                }
+            }
+        } catch (SQLException e) {
+            if (!TABLE_NOT_FOUND.equals(e.getSQLState())) throw e;
+            return fetchIdsOnly(c, movieIds);
+        }
+        return prices;
+    }
+
+    private static Map<String, Integer> fetchIdsOnly(Connection c, List<String> movieIds) throws SQLException {
+        Map<String, Integer> prices = new HashMap<>(movieIds.size() * 2);
+        try (PreparedStatement ps = c.prepareStatement(IDS_SQL_PREFIX + placeholders(movieIds.size()))) {
+            for (int i = 0; i < movieIds.size(); i++) {
+                ps.setString(i + 1, movieIds.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) prices.put(rs.getString(1), DEFAULT_PRICE_CENTS);
+            }
+        }
+        return prices;
+    }
+
+    private static long checksum(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(CHECKSUM_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            // fold the row count in so a delete and an insert with the same CRC still differ
+            return rs.next() ? rs.getLong(2) * 31 + rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            if (TABLE_NOT_FOUND.equals(e.getSQLState())) return 0;
+            throw e;
+        }
+    }
+
+    private static PriceCatalog load(Connection c, long checksum) throws SQLException {
+        String[] k = new String[16];
+        int[] v = new int[16];
+        int n = 0;
+        try (PreparedStatement ps = c.prepareStatement(LOAD_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                if ((n + 1) * 2 > k.length) {
+                    String[] oldKeys = k;
+                    int[] oldCents = v;
+                    k = new String[oldKeys.length * 2];
+                    v = new int[k.length];
+                    for (int i = 0; i < oldKeys.length; i++) {
+                        if (oldKeys[i] == null) continue;
+                        int j = slot(k, oldKeys[i]);
+                        k[j] = oldKeys[i];
+                        v[j] = oldCents[i];
+                    }
+                }
+                String movieId = rs.getString(1);
+                int i = slot(k, movieId);
+                if (k[i] == null) {
+                    k[i] = movieId;
+                    n++;
+                }
+                v[i] = rs.getInt(2);
+            }
+        } catch (SQLException e) {
+            if (!TABLE_NOT_FOUND.equals(e.getSQLState())) throw e;
+            System.err.println("PriceCatalog: movie_prices table not found, charging "
+                    + DEFAULT_PRICE_CENTS + " cents per movie");
+        }
+        return new PriceCatalog(k, v, n, checksum, true);
+    }
+
+    private PriceCatalog with(Map<String, Integer> prices) {
+        int capacity = Integer.highestOneBit(Math.max(8, size + prices.size()) * 2 - 1) << 1;
+        String[] k = new String[capacity];
+        int[] v = new int[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) continue;
+            int j = slot(k, keys[i]);
+            k[j] = keys[i];
+            v[j] = cents[i];
+        }
+        int n = size;
+        for (Map.Entry<String, Integer> e : prices.entrySet()) {
+            int i = slot(k, e.getKey());
+            if (k[i] == null) {
+                k[i] = e.getKey();
+                n++;
+            }
+            v[i] = e.getValue();
+        }
+        return new PriceCatalog(k, v, n, -1, loaded); // checksum() is never negative
+    }
+
+    // "?, ?, ?)" closing an IN list
+    private static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder(n * 3);
+        for (int i = 0; i < n; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.append(')').toString();
+    }
+
+    // slot holding the key, or the free slot where it belongs
+    private static int slot(String[] k, String key) {
+        int mask = k.length - 1;
+        int i = key.hashCode() & mask;
+        while (k[i] != null && !k[i].equals(key)) i = (i + 1) & mask;
+        return i;
+    }
+}
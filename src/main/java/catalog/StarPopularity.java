@@ -0,0 +1,135 @@
+package catalog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Number of movies per star, used to order a movie's cast without aggregating the whole
+ * {@code stars_in_movies} table per request. Kept as an open-addressing map from star id
+ * to a primitive int so a million-row table costs two arrays, not a million boxed entries.
+ * <p>
+ * Cast links are added together with new movies, so {@link #refresh} only counts the links
+ * of movies appended since the previous catalog; if the table size then disagrees with the
+ * running total (links added to old movies, or deletes), it reloads everything.
+ */
+public final class StarPopularity {
+    private static final String LOAD_SQL = "SELECT star_id, COUNT(*) FROM stars_in_movies GROUP BY star_id";
+    private static final String DELTA_SQL =
+            "SELECT star_id, COUNT(*) FROM stars_in_movies WHERE movie_id > ? GROUP BY star_id";
+    private static final String TOTAL_SQL = "SELECT COUNT(*) FROM stars_in_movies";
+
+    public static final StarPopularity EMPTY = new StarPopularity(new String[16], new int[16], 0, 0);
+
+    private static volatile StarPopularity current = EMPTY;
+
+    private final String[] keys; // null = free slot; length is a power of two
+    private final int[] counts;
+    private final int size;
+    private final long total; // sum of counts == rows in stars_in_movies when loaded
+
+    private StarPopularity(String[] keys, int[] counts, int size, long total) {
+        this.keys = keys;
+        this.counts = counts;
+        this.size = size;
+        this.total = total;
+    }
+
+    public static StarPopularity current() {
+        return current;
+    }
+
+    static void publish(StarPopularity popularity) {
+        current = popularity;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return how many movies the star appears in, 0 when unknown
+     */
+    public int count(String starId) {
+        if (starId == null) return 0;
+        int mask = keys.length - 1;
+        for (int i = starId.hashCode() & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(starId)) return counts[i];
+        }
+        return 0;
+    }
+
+    public static StarPopularity load(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(LOAD_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            return EMPTY.merge(rs);
+        }
+    }
+
+    /**
+     * Adds the cast links of movies with id after {@code previousMaxMovieId} and returns
+     * {@code this} when the table did not change.
+     */
+    public StarPopularity refresh(Connection c, String previousMaxMovieId) throws SQLException {
+        long rows = totalRows(c);
+        if (rows == total) return this;
+        if (isEmpty() || previousMaxMovieId == null) return load(c);
+
+        StarPopularity next;
+        try (PreparedStatement ps = c.prepareStatement(DELTA_SQL)) {
+            ps.setString(1, previousMaxMovieId);
+            try (ResultSet rs = ps.executeQuery()) {
+                next = merge(rs);
+            }
+        }
+        return next.total == rows ? next : load(c);
+    }
+
+    private static long totalRows(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(TOTAL_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // copy-on-write: readers keep using the old arrays while the new snapshot is built
+    private StarPopularity merge(ResultSet rs) throws SQLException {
+        String[] k = keys.clone();
+        int[] v = counts.clone();
+        int n = size;
+        long sum = total;
+        while (rs.next()) {
+            if ((n + 1) * 2 > k.length) {
+                String[] oldKeys = k;
+                int[] oldCounts = v;
+                k = new String[oldKeys.length * 2];
+                v = new int[k.length];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] == null) continue;
+                    int j = slot(k, oldKeys[i]);
+                    k[j] = oldKeys[i];
+                    v[j] = oldCounts[i];
+                }
+            }
+            String star = rs.getString(1);
+            int add = rs.getInt(2);
+            int i = slot(k, star);
+            if (k[i] == null) {
+                k[i] = star;
+                n++;
+            }
+            v[i] += add;
+            sum += add;
+        }
+        return new StarPopularity(k, v, n, sum);
+    }
+
+    // slot holding the key, or the free slot where it belongs
+    private static int slot(String[] k, String key) {
+        int mask = k.length - 1;
+        int i = key.hashCode() & mask;
+        while (k[i] != null && !k[i].equals(key)) i = (i + 1) & mask;
+        return i;
+    }
+}
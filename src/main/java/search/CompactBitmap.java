@@ -0,0 +1,235 @@
+package search;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable roaring-style compressed bitmap of non-negative ints. Values are split into
+ * 65536-wide chunks by their high 16 bits; a chunk is a sorted {@code char[]} while sparse
+ * (up to 4096 values) and a 1024-word {@code long[]} once dense.
+ */
+public final class CompactBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    public static final CompactBitmap EMPTY = new CompactBitmap(new char[0], new Object[0], 0);
+
+    private final char[] keys;
+    private final Object[] chunks; // char[] or long[]
+    private final int cardinality;
+
+    private CompactBitmap(char[] keys, Object[] chunks, int cardinality) {
+        this.keys = keys;
+        this.chunks = chunks;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * @param values any order, duplicates allowed
+     */
+    public static CompactBitmap of(int[] values, int length) {
+        int[] v = Arrays.copyOf(values, length);
+        Arrays.sort(v);
+        char[] keys = new char[0];
+        Object[] chunks = new Object[0];
+        int n = 0, total = 0;
+        int i = 0;
+        while (i < v.length) {
+            int high = v[i] >>> 16;
+            char[] low = new char[Math.min(v.length - i, 1 << 16)];
+            int count = 0;
+            for (; i < v.length && (v[i] >>> 16) == high; i++) {
+                char c = (char) v[i];
+                if (count == 0 || low[count - 1] != c) low[count++] = c;
+            }
+            if (n == keys.length) {
+                keys = Arrays.copyOf(keys, n * 2 + 1);
+                chunks = Arrays.copyOf(chunks, n * 2 + 1);
+            }
+            keys[n] = (char) high;
+            chunks[n++] = compact(Arrays.copyOf(low, count));
+            total += count;
+        }
+        return new CompactBitmap(Arrays.copyOf(keys, n), Arrays.copyOf(chunks, n), total);
+    }
+
+    public static CompactBitmap of(int[] values) {
+        return of(values, values.length);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public boolean contains(int value) {
+        int k = Arrays.binarySearch(keys, (char) (value >>> 16));
+        if (k < 0 || value < 0) return false;
+        return chunkContains(chunks[k], (char) value);
+    }
+
+    public CompactBitmap and(CompactBitmap o) {
+        char[] outKeys = new char[Math.min(keys.length, o.keys.length)];
+        Object[] outChunks = new Object[outKeys.length];
+        int n = 0, total = 0;
+        int i = 0, j = 0;
+        while (i < keys.length && j < o.keys.length) {
+            if (keys[i] < o.keys[j]) i++;
+            else if (keys[i] > o.keys[j]) j++;
+            else {
+                Object c = andChunks(chunks[i], o.chunks[j]);
+                int card = chunkCardinality(c);
+                if (card > 0) {
+                    outKeys[n] = keys[i];
+                    outChunks[n++] = c;
+                    total += card;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new CompactBitmap(Arrays.copyOf(outKeys, n), Arrays.copyOf(outChunks, n), total);
+    }
+
+    public CompactBitmap or(CompactBitmap o) {
+        char[] outKeys = new char[keys.length + o.keys.length];
+        Object[] outChunks = new Object[outKeys.length];
+        int n = 0, total = 0;
+        int i = 0, j = 0;
+        while (i < keys.length || j < o.keys.length) {
+            Object c;
+            if (j == o.keys.length || (i < keys.length && keys[i] < o.keys[j])) {
+                outKeys[n] = keys[i];
+                c = chunks[i++];
+            } else if (i == keys.length || keys[i] > o.keys[j]) {
+                outKeys[n] = o.keys[j];
+                c = o.chunks[j++];
+            } else {
+                outKeys[n] = keys[i];
+                c = orChunks(chunks[i++], o.chunks[j++]);
+            }
+            outChunks[n++] = c;
+            total += chunkCardinality(c);
+        }
+        return new CompactBitmap(Arrays.copyOf(outKeys, n), Arrays.copyOf(outChunks, n), total);
+    }
+
+    public int andCardinality(CompactBitmap o) {
+        int total = 0;
+        int i = 0, j = 0;
+        while (i < keys.length && j < o.keys.length) {
+            if (keys[i] < o.keys[j]) i++;
+            else if (keys[i] > o.keys[j]) j++;
+            else total += chunkCardinality(andChunks(chunks[i++], o.chunks[j++]));
+        }
+        return total;
+    }
+
+    /**
+     * Visits values in ascending order.
+     */
+    public void forEach(IntConsumer action) {
+        for (int k = 0; k < keys.length; k++) {
+            int base = keys[k] << 16;
+            if (chunks[k] instanceof char[] a) {
+                for (char c : a) action.accept(base | c);
+            } else {
+                long[] w = (long[]) chunks[k];
+                for (int x = 0; x < WORDS; x++) {
+                    long word = w[x];
+                    while (word != 0) {
+                        action.accept(base | (x << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    public int[] toArray() {
+        int[] out = new int[cardinality];
+        int[] n = {0};
+        forEach(v -> out[n[0]++] = v);
+        return out;
+    }
+
+    private static Object compact(char[] sorted) {
+        if (sorted.length <= ARRAY_MAX) return sorted;
+        long[] w = new long[WORDS];
+        for (char c : sorted) w[c >>> 6] |= 1L << c;
+        return w;
+    }
+
+    private static Object compact(long[] words) {
+        int card = 0;
+        for (long x : words) card += Long.bitCount(x);
+        if (card > ARRAY_MAX) return words;
+        char[] out = new char[card];
+        int n = 0;
+        for (int x = 0; x < WORDS; x++) {
+            long word = words[x];
+            while (word != 0) {
+                out[n++] = (char) ((x << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+
+    private static boolean chunkContains(Object chunk, char c) {
+        if (chunk instanceof char[] a) return Arrays.binarySearch(a, c) >= 0;
+        return (((long[]) chunk)[c >>> 6] & (1L << c)) != 0;
+    }
+
+    private static int chunkCardinality(Object chunk) {
+        if (chunk instanceof char[] a) return a.length;
+        int card = 0;
+        for (long x : (long[]) chunk) card += Long.bitCount(x);
+        return card;
+    }
+
+    private static Object andChunks(Object a, Object b) {
+        if (a instanceof char[] x && b instanceof char[] y) {
+            char[] out = new char[Math.min(x.length, y.length)];
+            int i = 0, j = 0, n = 0;
+            while (i < x.length && j < y.length) {
+                if (x[i] < y[j]) i++;
+                else if (x[i] > y[j]) j++;
+                else {
+                    out[n++] = x[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+        if (a instanceof long[] && b instanceof char[]) return andChunks(b, a);
+        if (a instanceof char[] x) {
+            long[] w = (long[]) b;
+            char[] out = new char[x.length];
+            int n = 0;
+            for (char c : x) if ((w[c >>> 6] & (1L << c)) != 0) out[n++] = c;
+            return Arrays.copyOf(out, n);
+        }
+        long[] x = (long[]) a, y = (long[]) b;
+        long[] out = new long[WORDS];
+        for (int i = 0; i < WORDS; i++) out[i] = x[i] & y[i];
+        return compact(out);
+    }
+
+    private static Object orChunks(Object a, Object b) {
+        long[] out = new long[WORDS];
+        for (Object chunk : new Object[]{a, b}) {
+            if (chunk instanceof char[] x) {
+                for (char c : x) out[c >>> 6] |= 1L << c;
+            } else {
+                long[] w = (long[]) chunk;
+                for (int i = 0; i < WORDS; i++) out[i] |= w[i];
+            }
+        }
+        return compact(out);
+    }
+}
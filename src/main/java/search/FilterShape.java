@@ -0,0 +1,152 @@
+package search;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bitmask of the {@link SearchCriteria} filters a request actually uses. Each shape gets
+ * its own SQL containing only those predicates (stars/genres as EXISTS semi-joins, so no
+ * DISTINCT fan-out), generated once and cached.
+ */
+final class FilterShape {
+    static final int TITLE = 1;
+    static final int ID_SET = 1 << 1;
+    static final int YEAR = 1 << 2;
+    static final int DIRECTOR = 1 << 3;
+    static final int STAR = 1 << 4;
+    static final int LETTER = 1 << 5;
+    static final int DIGIT = 1 << 6;
+    static final int GENRE_ID = 1 << 7;
+    static final int GENRE_NAME = 1 << 8;
+    static final int FULLTEXT = 1 << 9;
+    static final int GENRE_SET = 1 << 10;
+    static final int GENRE_ALL = 1 << 11;
+
+    // filters MovieBitmaps can answer without SQL
+    static final int BITMAP_SERVABLE = YEAR | LETTER | DIGIT | GENRE_ID | GENRE_NAME | GENRE_SET | GENRE_ALL;
+
+    // replaced per request, since list lengths are not part of the shape
+    private static final String ID_LIST = "/*ids*/";
+    private static final String GENRE_LIST = "/*genres*/";
+
+    private record Key(int mask, String orderKey, boolean seek) {
+    }
+
+    private static final ConcurrentHashMap<Key, String> SQL_BY_SHAPE = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, String> IDS_SQL_BY_SHAPE = new ConcurrentHashMap<>();
+
+    private FilterShape() {
+    }
+
+    /**
+     * @param titleBit how the title is matched: {@link #TITLE} (LIKE), {@link #ID_SET}
+     *                 (resolved to ids in memory) or {@link #FULLTEXT}
+     */
+    static int maskOf(SearchCriteria s, int titleBit) {
+        int mask = 0;
+        if (s.effectiveTitle() != null && s.hasTitle()) mask |= titleBit;
+        if (s.hasYear()) mask |= YEAR;
+        if (s.hasDirector()) mask |= DIRECTOR;
+        if (s.hasStar()) mask |= STAR;
+        if (s.hasInitial()) mask |= "0-9".equalsIgnoreCase(s.initial()) ? DIGIT : LETTER;
+        if (s.hasGenreId()) mask |= GENRE_ID;
+        if (s.hasGenre()) mask |= GENRE_NAME;
+        if (s.hasGenreIds()) mask |= s.allGenres() ? GENRE_SET | GENRE_ALL : GENRE_SET;
+        return mask;
+    }
+
+    static String sql(int mask, SearchCriteria s, String orderKey, boolean seek, int idCount) {
+        String sql = SQL_BY_SHAPE.computeIfAbsent(new Key(mask, orderKey, seek),
+                k -> SqlTemplates.filteredPagedSql(where(k.mask()), k.orderKey(), k.seek()));
+        return expandLists(sql, mask, s, idCount);
+    }
+
+    /**
+     * All matching ids for the shape, unpaged.
+     */
+    static String idsSql(int mask, SearchCriteria s) {
+        String sql = IDS_SQL_BY_SHAPE.computeIfAbsent(mask, m -> SqlTemplates.filteredIdsSql(where(m)));
+        return expandLists(sql, mask, s, 0);
+    }
+
+    private static String expandLists(String sql, int mask, SearchCriteria s, int idCount) {
+        if ((mask & ID_SET) != 0) {
+            sql = sql.replace(ID_LIST, idCount == 0 ? "NULL" : SqlTemplates.placeholders(idCount));
+        }
+        if ((mask & GENRE_SET) != 0) {
+            sql = sql.replace(GENRE_LIST, SqlTemplates.placeholders(distinctGenreIds(s).length));
+        }
+        return sql;
+    }
+
+    static int[] distinctGenreIds(SearchCriteria s) {
+        return s.genreIds().stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+
+    static String where(int mask) {
+        List<String> p = new ArrayList<>();
+        if ((mask & TITLE) != 0) p.add("m.title LIKE ?");
+        if ((mask & ID_SET) != 0) p.add("m.id IN (" + ID_LIST + ")");
+        if ((mask & FULLTEXT) != 0) p.add("MATCH(m.title) AGAINST (? IN BOOLEAN MODE)");
+        if ((mask & YEAR) != 0) p.add("m.year = ?");
+        if ((mask & DIRECTOR) != 0) p.add("m.director LIKE ?");
+        if ((mask & STAR) != 0) {
+            p.add("""
+                    EXISTS (SELECT 1 FROM stars_in_movies sim
+                                JOIN stars s ON s.id = sim.star_id
+                                WHERE sim.movie_id = m.id AND s.name LIKE ?)""");
+        }
+        // a title starting with "a" also sorts as a prefix range, unlike UPPER(SUBSTRING(...))
+        if ((mask & LETTER) != 0) p.add("m.title LIKE ?");
+        if ((mask & DIGIT) != 0) p.add("SUBSTRING(m.title,1,1) BETWEEN '0' AND '9'");
+        if ((mask & (GENRE_ID | GENRE_NAME)) == GENRE_ID) {
+            p.add("EXISTS (SELECT 1 FROM genres_in_movies gim WHERE gim.movie_id = m.id AND gim.genre_id = ?)");
+        } else if ((mask & GENRE_NAME) != 0) {
+            // id and name must hold for the same genre row, as with the old single join
+            String idCond = (mask & GENRE_ID) != 0 ? " AND g.id = ?" : "";
+            p.add("""
+                    EXISTS (SELECT 1 FROM genres_in_movies gim
+                                JOIN genres g ON g.id = gim.genre_id
+                                WHERE gim.movie_id = m.id""" + idCond + " AND g.name = ?)");
+        }
+        if ((mask & GENRE_ALL) != 0) {
+            p.add("(SELECT COUNT(DISTINCT gim.genre_id) FROM genres_in_movies gim"
+                    + " WHERE gim.movie_id = m.id AND gim.genre_id IN (" + GENRE_LIST + ")) = ?");
+        } else if ((mask & GENRE_SET) != 0) {
+            p.add("EXISTS (SELECT 1 FROM genres_in_movies gim WHERE gim.movie_id = m.id AND gim.genre_id IN (" + GENRE_LIST + "))");
+        }
+        return p.isEmpty() ? "TRUE" : String.join("\n  AND ", p);
+    }
+
+    /**
+     * Binds the filter values in the same order {@link #where(int)} emits them.
+     *
+     * @return the next parameter index
+     */
+    static int bind(PreparedStatement ps, int i, int mask, SearchCriteria s, String[] ids) throws SQLException {
+        if ((mask & TITLE) != 0) ps.setString(i++, "%" + s.effectiveTitle() + "%");
+        if ((mask & ID_SET) != 0) {
+            for (String id : ids) ps.setString(i++, id);
+        }
+        if ((mask & FULLTEXT) != 0) ps.setString(i++, FullTextQuery.toBooleanQuery(s.effectiveTitle()));
+        if ((mask & YEAR) != 0) ps.setInt(i++, s.year());
+        if ((mask & DIRECTOR) != 0) ps.setString(i++, "%" + s.director() + "%");
+        if ((mask & STAR) != 0) ps.setString(i++, "%" + s.star() + "%");
+        if ((mask & LETTER) != 0) ps.setString(i++, escapeLike(s.initial()) + "%");
+        if ((mask & GENRE_ID) != 0) ps.setInt(i++, s.genreId());
+        if ((mask & GENRE_NAME) != 0) ps.setString(i++, s.genre());
+        if ((mask & GENRE_SET) != 0) {
+            int[] genreIds = distinctGenreIds(s);
+            for (int g : genreIds) ps.setInt(i++, g);
+            if ((mask & GENRE_ALL) != 0) ps.setInt(i++, genreIds.length);
+        }
+        return i;
+    }
+
+    private static String escapeLike(String v) {
+        return v.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,106 @@
+package search;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Turns a free-text title into an InnoDB boolean-mode query where every token is a
+ * required prefix term ({@code +star* +wars*}). Needs the index in {@link #INDEX_DDL};
+ * without it MySQL rejects {@code MATCH} (error 1191), so the FULLTEXT plan is only chosen
+ * after {@link #probe} found the index, and titles go through the n-gram index otherwise.
+ */
+public final class FullTextQuery {
+    public static final String INDEX_DDL = "ALTER TABLE movies ADD FULLTEXT INDEX ft_movies_title (title)";
+    // a FULLTEXT index over title alone; one spanning more columns cannot serve MATCH(m.title)
+    private static final String PROBE_SQL = """
+            SELECT index_name FROM information_schema.statistics
+            WHERE table_schema = DATABASE() AND table_name = 'movies' AND index_type = 'FULLTEXT'
+            GROUP BY index_name
+            HAVING COUNT(*) = 1 AND MAX(column_name) = 'title'
+            """;
+
+    private static volatile boolean indexed;
+
+    // innodb_ft_min_token_size default; shorter tokens are never indexed
+    static final int MIN_TOKEN = 3;
+
+    // InnoDB default stopword list: a required stopword would make the whole query match nothing
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "about", "an", "are", "as", "at", "be", "by", "com", "de", "en", "for",
+            "from", "how", "i", "in", "is", "it", "la", "of", "on", "or", "that", "the",
+            "this", "to", "was", "what", "when", "where", "who", "will", "with", "und", "www");
+
+    private FullTextQuery() {
+    }
+
+    /**
+     * @return whether the last {@link #probe} found the FULLTEXT index on {@code movies.title}
+     */
+    public static boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Looks for the title FULLTEXT index, first creating it with {@link #INDEX_DDL} when it is
+     * missing and {@code create} is set, and enables the FULLTEXT plan only if it exists.
+     * A failed probe leaves the plan disabled.
+     */
+    public static boolean probe(Connection c, boolean create) throws SQLException {
+        boolean found = false;
+        try {
+            found = hasIndex(c);
+            if (!found && create) {
+                try (Statement st = c.createStatement()) {
+                    st.execute(INDEX_DDL);
+                }
+                found = hasIndex(c);
+            }
+        } finally {
+            indexed = found;
+        }
+        return found;
+    }
+
+    private static boolean hasIndex(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(PROBE_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * @return the boolean-mode query, or null when some token is too short to be indexed
+     * (or nothing but stopwords remain) and LIKE has to be used instead
+     */
+    public static String toBooleanQuery(String title) {
+        if (title == null) return null;
+        List<String> terms = new ArrayList<>();
+        // splitting on anything but letters/digits also strips boolean-mode operators
+        for (String token : title.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty() || STOPWORDS.contains(token)) continue;
+            if (token.length() < MIN_TOKEN) return null;
+            terms.add("+" + token + "*");
+        }
+        return terms.isEmpty() ? null : String.join(" ", terms);
+    }
+
+    /**
+     * Full-text is chosen for multi-keyword titles, where it matches the words in any order;
+     * single words keep substring semantics through the n-gram index.
+     */
+    static boolean prefers(String title) {
+        if (toBooleanQuery(title) == null) return false;
+        int words = 0;
+        for (String token : title.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) words++;
+        }
+        return words > 1;
+    }
+}
@@ -0,0 +1,113 @@
+package search;
+
+import java.util.Arrays;
+
+/**
+ * Typo-tolerant title matching on top of {@link TitleNgramIndex}: trigram overlap picks the
+ * candidates (q-gram lemma), then a bounded approximate-substring edit distance confirms them.
+ * Never runs a distance function in SQL.
+ * <p>
+ * Each query has a time budget. The clock is read every {@value #POSTING_STRIDE} postings
+ * while merging and every {@value #CLOCK_STRIDE} verified candidates, so a query overruns
+ * by at most one stride. Past the deadline, a merge returns no matches (its overlap counts
+ * are incomplete) and verification returns the hits confirmed so far. The overlap counts
+ * are one {@code int} per catalog title, allocated before the clock starts.
+ */
+public final class FuzzyTitleMatcher {
+    public static final long DEFAULT_BUDGET_NANOS = 25_000_000L;
+    static final int MAX_RESULTS = 500;
+    // check the clock every this many verified candidates / merged postings (power of two)
+    private static final int CLOCK_STRIDE = 64;
+    private static final int POSTING_STRIDE = 4096;
+
+    private FuzzyTitleMatcher() {
+    }
+
+    static int maxDistance(int queryLength) {
+        if (queryLength <= 4) return 1;
+        if (queryLength <= 9) return 2;
+        return 3;
+    }
+
+    /**
+     * @param rank position of each ordinal in the default rating ordering (-1 = unrated, skipped)
+     * @return matching ordinals ranked by edit distance, then rating; null when the query is
+     * too short for trigrams or the index is not loaded
+     */
+    public static int[] match(TitleNgramIndex index, int[] rank, String query, long budgetNanos) {
+        if (index.isEmpty() || rank == null || query == null) return null;
+        String q = TitleNgramIndex.normalize(query).strip();
+        int grams = q.length() - TitleNgramIndex.GRAM + 1;
+        if (grams < 1) return null;
+
+        int size = index.catalog().size();
+        int[] overlap = new int[size];
+        long deadline = System.nanoTime() + budgetNanos;
+        int d = maxDistance(q.length());
+        // each edit destroys at most GRAM grams of the matching window
+        int need = Math.max(1, grams - d * TitleNgramIndex.GRAM);
+
+        int[] touched = new int[64];
+        int touchedCount = 0;
+        int merged = 0;
+        for (int i = 0; i < grams; i++) {
+            int[] list = index.postings(q, i);
+            if (list == null) continue;
+            for (int ord : list) {
+                if ((++merged & (POSTING_STRIDE - 1)) == 0 && System.nanoTime() > deadline) return new int[0];
+                if (ord >= size) continue;
+                if (overlap[ord]++ == 0) {
+                    if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+                    touched[touchedCount++] = ord;
+                }
+            }
+        }
+
+        // distance << 56 | rank << 28 | ordinal, so a plain sort orders by distance, then rating
+        long[] hits = new long[Math.min(touchedCount, 1024)];
+        int n = 0;
+        int verified = 0;
+        for (int t = 0; t < touchedCount; t++) {
+            int ord = touched[t];
+            if (overlap[ord] < need || ord >= rank.length || rank[ord] < 0) continue;
+            if (++verified % CLOCK_STRIDE == 0 && System.nanoTime() > deadline) break;
+
+            int dist = substringDistance(q, index.normalizedTitle(ord), d);
+            if (dist > d) continue;
+            if (n == hits.length) hits = Arrays.copyOf(hits, n * 2);
+            hits[n++] = ((long) dist << 56) | ((long) rank[ord] << 28) | ord;
+        }
+
+        Arrays.sort(hits, 0, n);
+        int[] out = new int[Math.min(n, MAX_RESULTS)];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (int) (hits[i] & ((1 << 28) - 1));
+        }
+        return out;
+    }
+
+    /**
+     * Smallest edit distance between q and any substring of t (Sellers), or max + 1 once it
+     * is certain to exceed max.
+     */
+    static int substringDistance(String q, String t, int max) {
+        int m = q.length();
+        int[] col = new int[m + 1];
+        for (int i = 0; i <= m; i++) col[i] = i;
+        int best = col[m];
+
+        for (int j = 0; j < t.length() && best > 0; j++) {
+            char c = t.charAt(j);
+            int diag = col[0];
+            col[0] = 0; // a match may start at any position of the title
+            for (int i = 1; i <= m; i++) {
+                int up = col[i];
+                int cost = q.charAt(i - 1) == c ? 0 : 1;
+                col[i] = Math.min(Math.min(up + 1, col[i - 1] + 1), diag + cost);
+                diag = up;
+            }
+            if (col[m] < best) best = col[m];
+        }
+        return Math.min(best, max + 1);
+    }
+}
@@ -0,0 +1,235 @@
+package search;
+
+import catalog.MovieCatalog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compressed bitmaps of catalog ordinals per genre, per year and per title initial, plus
+ * "has a rating". Filter-only searches (including multi-genre AND/OR) are answered by
+ * intersecting them, and facet counts over a candidate set are AND-cardinalities plus one
+ * pass over the set, instead of a COUNT query per facet.
+ */
+public final class MovieBitmaps {
+    private static final String YEARS_SQL = "SELECT id, year FROM movies";
+    private static final String RATED_SQL = "SELECT movie_id FROM ratings";
+    private static final String GENRES_SQL = "SELECT id, name FROM genres ORDER BY name ASC";
+    private static final String GENRE_LINKS_SQL = "SELECT movie_id, genre_id FROM genres_in_movies";
+
+    // initial used for titles starting with a digit ("0-9" in the browse UI)
+    private static final char DIGITS = '#';
+
+    public static final MovieBitmaps EMPTY = new MovieBitmaps(MovieCatalog.EMPTY, new int[0],
+            CompactBitmap.EMPTY, List.of(), Map.of(), Map.of());
+
+    public record Genre(int id, String name, CompactBitmap movies) {
+    }
+
+    public record Facets(int total, List<Count> genres, List<Count> decades, List<Count> years) {
+    }
+
+    /**
+     * @param key genre id, decade (1990) or year
+     * @param name genre name, null for decades and years
+     */
+    public record Count(int key, String name, int count) {
+    }
+
+    private final MovieCatalog catalog;
+    private final int[] years; // 0 when unknown
+    private final CompactBitmap rated;
+    private final List<Genre> genres;
+    private final Map<Integer, CompactBitmap> byYear;
+    private final Map<Character, CompactBitmap> byInitial;
+    private final Map<Integer, Genre> genreById = new HashMap<>();
+    private final Map<String, Genre> genreByName = new HashMap<>();
+
+    private MovieBitmaps(MovieCatalog catalog, int[] years, CompactBitmap rated, List<Genre> genres,
+                         Map<Integer, CompactBitmap> byYear, Map<Character, CompactBitmap> byInitial) {
+        this.catalog = catalog;
+        this.years = years;
+        this.rated = rated;
+        this.genres = genres;
+        this.byYear = byYear;
+        this.byInitial = byInitial;
+        for (Genre g : genres) {
+            genreById.put(g.id(), g);
+            genreByName.put(g.name().toLowerCase(Locale.ROOT), g);
+        }
+    }
+
+    public MovieCatalog catalog() {
+        return catalog;
+    }
+
+    public boolean isEmpty() {
+        return catalog.size() == 0;
+    }
+
+    /**
+     * Movies that can appear in results at all (search joins ratings).
+     */
+    public CompactBitmap rated() {
+        return rated;
+    }
+
+    public static MovieBitmaps load(Connection c, MovieCatalog catalog) throws SQLException {
+        int n = catalog.size();
+        int[] years = new int[n];
+        try (PreparedStatement ps = c.prepareStatement(YEARS_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int ord = catalog.ordinalOf(rs.getString(1));
+                if (ord >= 0) years[ord] = rs.getInt(2);
+            }
+        }
+
+        Map<Integer, Members> yearMembers = new HashMap<>();
+        Map<Character, Members> initialMembers = new HashMap<>();
+        for (int ord = 0; ord < n; ord++) {
+            if (years[ord] > 0) yearMembers.computeIfAbsent(years[ord], k -> new Members()).add(ord);
+            char initial = initialOf(catalog.title(ord));
+            if (initial != 0) initialMembers.computeIfAbsent(initial, k -> new Members()).add(ord);
+        }
+
+        Members ratedMembers = new Members();
+        try (PreparedStatement ps = c.prepareStatement(RATED_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int ord = catalog.ordinalOf(rs.getString(1));
+                if (ord >= 0) ratedMembers.add(ord);
+            }
+        }
+
+        List<Integer> genreOrder = new ArrayList<>();
+        Map<Integer, String> genreNames = new HashMap<>();
+        try (PreparedStatement ps = c.prepareStatement(GENRES_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                genreOrder.add(rs.getInt(1));
+                genreNames.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+        Map<Integer, Members> genreMembers = new HashMap<>();
+        try (PreparedStatement ps = c.prepareStatement(GENRE_LINKS_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int ord = catalog.ordinalOf(rs.getString(1));
+                if (ord >= 0) genreMembers.computeIfAbsent(rs.getInt(2), k -> new Members()).add(ord);
+            }
+        }
+
+        List<Genre> genres = new ArrayList<>(genreOrder.size());
+        for (int id : genreOrder) {
+            Members m = genreMembers.get(id);
+            genres.add(new Genre(id, genreNames.get(id), m == null ? CompactBitmap.EMPTY : m.toBitmap()));
+        }
+        Map<Integer, CompactBitmap> byYear = new HashMap<>();
+        yearMembers.forEach((y, m) -> byYear.put(y, m.toBitmap()));
+        Map<Character, CompactBitmap> byInitial = new HashMap<>();
+        initialMembers.forEach((ch, m) -> byInitial.put(ch, m.toBitmap()));
+
+        return new MovieBitmaps(catalog, years, ratedMembers.toBitmap(), List.copyOf(genres), byYear, byInitial);
+    }
+
+    /**
+     * Evaluates the year / initial / genre filters of the criteria (title, director and star
+     * are ignored; callers only use this when those are absent).
+     *
+     * @return the matching rated movies, or null when some filter cannot be answered here
+     */
+    public CompactBitmap filter(SearchCriteria s) {
+        CompactBitmap acc = rated;
+        if (s.hasYear()) acc = acc.and(byYear.getOrDefault(s.year(), CompactBitmap.EMPTY));
+
+        if (s.hasInitial()) {
+            char key;
+            if ("0-9".equalsIgnoreCase(s.initial())) {
+                key = DIGITS;
+            } else {
+                String norm = TitleNgramIndex.normalize(s.initial());
+                if (norm.length() != 1) return null; // a longer prefix is a LIKE, leave it to SQL
+                key = norm.charAt(0);
+            }
+            acc = acc.and(byInitial.getOrDefault(key, CompactBitmap.EMPTY));
+        }
+
+        if (s.hasGenreId() || s.hasGenre()) {
+            Genre g = s.hasGenreId() ? genreById.get(s.genreId()) : genreByName.get(s.genre().toLowerCase(Locale.ROOT));
+            // with both set, id and name must describe the same genre
+            if (g != null && s.hasGenreId() && s.hasGenre() && !g.name().equalsIgnoreCase(s.genre())) g = null;
+            acc = acc.and(g == null ? CompactBitmap.EMPTY : g.movies());
+        }
+
+        if (s.hasGenreIds()) {
+            CompactBitmap any = CompactBitmap.EMPTY;
+            for (int id : FilterShape.distinctGenreIds(s)) {
+                Genre g = genreById.get(id);
+                CompactBitmap movies = g == null ? CompactBitmap.EMPTY : g.movies();
+                if (s.allGenres()) acc = acc.and(movies);
+                else any = any.or(movies);
+            }
+            if (!s.allGenres()) acc = acc.and(any);
+        }
+        return acc;
+    }
+
+    /**
+     * Total, per-genre counts (genres in name order, zero counts dropped) and year/decade
+     * histograms for the candidate ordinals.
+     */
+    public Facets facets(CompactBitmap candidates) {
+        List<Count> genreCounts = new ArrayList<>();
+        for (Genre g : genres) {
+            int n = g.movies().andCardinality(candidates);
+            if (n > 0) genreCounts.add(new Count(g.id(), g.name(), n));
+        }
+
+        TreeMap<Integer, Integer> byYearCount = new TreeMap<>();
+        candidates.forEach(ord -> {
+            if (ord < years.length && years[ord] > 0) byYearCount.merge(years[ord], 1, Integer::sum);
+        });
+
+        TreeMap<Integer, Integer> byDecade = new TreeMap<>();
+        List<Count> yearCounts = new ArrayList<>(byYearCount.size());
+        for (Map.Entry<Integer, Integer> e : byYearCount.entrySet()) {
+            yearCounts.add(new Count(e.getKey(), null, e.getValue()));
+            byDecade.merge(e.getKey() / 10 * 10, e.getValue(), Integer::sum);
+        }
+        List<Count> decadeCounts = new ArrayList<>(byDecade.size());
+        byDecade.forEach((decade, n) -> decadeCounts.add(new Count(decade, null, n)));
+
+        return new Facets(candidates.cardinality(), genreCounts, decadeCounts, yearCounts);
+    }
+
+    // mirrors the SQL initial filters: accent/case-insensitive letter, or any digit
+    private static char initialOf(String title) {
+        String norm = TitleNgramIndex.normalize(title);
+        if (norm.isEmpty()) return 0;
+        char first = norm.charAt(0);
+        return (first >= '0' && first <= '9') ? DIGITS : first;
+    }
+
+    private static final class Members {
+        int[] ords = new int[8];
+        int size;
+
+        void add(int ord) {
+            if (size == ords.length) ords = java.util.Arrays.copyOf(ords, size * 2);
+            ords[size++] = ord;
+        }
+
+        CompactBitmap toBitmap() {
+            return CompactBitmap.of(ords, size);
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package search;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
 
 import static utils.JsonUtils.writeIfNotNull;
 import static utils.JsonUtils.writeJsonArrayOrEmpty;
@@ -16,17 +23,18 @@ public final class MovieJsonWriter {
     public static void writeOne(
             JsonWriter jsonWriter,
             ResultSet resultSet) throws IOException, SQLException {
-        jsonWriter.beginObject();
+        writeOne(jsonWriter, resultSet, resultSet.getString("stars"));
+    }
 
-        writeIfNotNull(jsonWriter, "id", resultSet.getString("id"));
-        writeIfNotNull(jsonWriter, "title", resultSet.getString("title_name"));
-        writeIfNotNull(jsonWriter, "director", resultSet.getString("director"));
-        writeIfNotNull(jsonWriter, "year", resultSet.getObject("year"));
-        writeIfNotNull(jsonWriter, "rating", resultSet.getObject("rating"));
-        writeIfNotNull(jsonWriter, "vote_count", resultSet.getObject("vote_count"));
+    private static void writeOne(
+            JsonWriter jsonWriter,
+            ResultSet resultSet,
+            String starsJson) throws IOException, SQLException {
+        jsonWriter.beginObject();
+        writeFields(jsonWriter, resultSet);
 
         jsonWriter.name("stars");
-        writeJsonArrayOrEmpty(jsonWriter, resultSet.getString("stars"));
+        writeJsonArrayOrEmpty(jsonWriter, starsJson);
 
         jsonWriter.name("genres");
         writeJsonArrayOrEmpty(jsonWriter, resultSet.getString("genres"));
@@ -34,7 +42,20 @@ public final class MovieJsonWriter {
         jsonWriter.endObject();
     }
 
+    private static void writeFields(JsonWriter jsonWriter, ResultSet resultSet) throws IOException, SQLException {
+        writeIfNotNull(jsonWriter, "id", resultSet.getString("id"));
+        writeIfNotNull(jsonWriter, "title", resultSet.getString("title_name"));
+        writeIfNotNull(jsonWriter, "director", resultSet.getString("director"));
+        writeIfNotNull(jsonWriter, "year", resultSet.getObject("year"));
+        writeIfNotNull(jsonWriter, "rating", resultSet.getObject("rating"));
+        writeIfNotNull(jsonWriter, "vote_count", resultSet.getObject("vote_count"));
+    }
+
     public static void writeArray(JsonWriter jw, ResultSet rs) throws IOException, SQLException {
+        if (SqlTemplates.RESULT_MODE == SqlTemplates.ResultMode.ROWS) {
+            writeRows(jw, rs, null, Integer.MAX_VALUE);
+            return;
+        }
         jw.beginArray();
         while (rs.next()) {
             writeOne(jw, rs);
@@ -42,10 +63,111 @@ public final class MovieJsonWriter {
         jw.endArray();
     }
 
+    /**
+     * Writes the page and returns the cursor for the page after it, or null when
+     * fewer than {@code limit} rows came back (no next page).
+     */
+    public static SeekCursor writeArray(JsonWriter jw, ResultSet rs, String orderKey, int limit) throws IOException, SQLException {
+        if (SqlTemplates.RESULT_MODE == SqlTemplates.ResultMode.ROWS) return writeRows(jw, rs, orderKey, limit);
+        int count = 0;
+        String rating = null, title = null, id = null;
+        jw.beginArray();
+        while (rs.next()) {
+            writeOne(jw, rs);
+            rating = rs.getString("rating");
+            title = rs.getString("title_name");
+            id = rs.getString("id");
+            count++;
+        }
+        jw.endArray();
+        return (count < limit || id == null) ? null : SeekCursor.after(orderKey, rating, title, id);
+    }
+
+    /**
+     * Page assembly for {@link SqlTemplates.ResultMode#ROWS}: rows arrive as movie, its stars,
+     * its genres (see ROWS_FINAL_SELECT), so each movie is written as soon as its rows pass.
+     * Lists arrive already capped and ordered by the query.
+     */
+    private static SeekCursor writeRows(JsonWriter jw, ResultSet rs, String orderKey, int limit) throws IOException, SQLException {
+        int count = 0;
+        String rating = null, title = null, id = null;
+        int open = -1; // kind of the current movie's last section; -1 before the first movie
+        int seq = -1;
+        jw.beginArray();
+        while (rs.next()) {
+            int kind = rs.getInt("kind");
+            if (kind == 0) {
+                seq = rs.getInt("seq");
+                if (open >= 0) closeMovie(jw, open);
+                jw.beginObject();
+                writeFields(jw, rs);
+                open = 0;
+                rating = rs.getString("rating");
+                title = rs.getString("title_name");
+                id = rs.getString("id");
+                count++;
+                continue;
+            }
+            if (rs.getInt("seq") != seq) continue; // list rows whose movie row was not returned
+            if (kind != open) {
+                if (open == 1) jw.endArray();
+                if (kind == 2 && open == 0) jw.name("stars").beginArray().endArray();
+                jw.name(kind == 1 ? "stars" : "genres").beginArray();
+                open = kind;
+            }
+            jw.beginObject();
+            jw.name("id");
+            if (kind == 1) jw.value(rs.getString("ref_id"));
+            else jw.value(Integer.parseInt(rs.getString("ref_id")));
+            jw.name("name").value(rs.getString("title_name"));
+            jw.endObject();
+        }
+        if (open >= 0) closeMovie(jw, open);
+        jw.endArray();
+        return (orderKey == null || count < limit || id == null) ? null : SeekCursor.after(orderKey, rating, title, id);
+    }
+
+    private static void closeMovie(JsonWriter jw, int open) throws IOException {
+        if (open == 0) jw.name("stars").beginArray().endArray();
+        if (open >= 1) jw.endArray();
+        if (open <= 1) jw.name("genres").beginArray().endArray();
+        jw.endObject();
+    }
+
     public static boolean writeSingleIfPresent(JsonWriter jw, ResultSet rs) throws IOException, SQLException {
         if (!rs.next()) return false;
         writeOne(jw, rs);
         return true;
     }
+
+    /**
+     * Like {@link #writeSingleIfPresent(JsonWriter, ResultSet)}, with the stars ordered as in
+     * {@link #writeOne(JsonWriter, ResultSet, ToIntFunction)}.
+     */
+    public static boolean writeSingleIfPresent(JsonWriter jw, ResultSet rs, ToIntFunction<String> moviesPerStar)
+            throws IOException, SQLException {
+        if (!rs.next()) return false;
+        writeOne(jw, rs, moviesPerStar);
+        return true;
+    }
+
+    /**
+     * Writes the current row with its star array reordered by {@code moviesPerStar}
+     * (most movies first), keeping the row's order among equal counts.
+     */
+    public static void writeOne(JsonWriter jw, ResultSet rs, ToIntFunction<String> moviesPerStar)
+            throws IOException, SQLException {
+        String starsJson = rs.getString("stars");
+        if (starsJson != null && !starsJson.isBlank()) {
+            List<JsonElement> stars = JsonParser.parseString(starsJson).getAsJsonArray().asList();
+            List<JsonElement> sorted = new ArrayList<>(stars);
+            sorted.sort(Comparator.comparingInt((JsonElement e) ->
+                    moviesPerStar.applyAsInt(e.getAsJsonObject().get("id").getAsString())).reversed());
+            JsonArray out = new JsonArray(sorted.size());
+            sorted.forEach(out::add);
+            starsJson = out.toString();
+        }
+        writeOne(jw, rs, starsJson);
+    }
 }
 
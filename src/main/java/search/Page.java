@@ -1,4 +1,24 @@
 package search;
 
-public record Page(int limit, int offset) {
+/**
+ * A page request. When {@code after} is set the page seeks past that cursor and
+ * {@code offset} is ignored; otherwise classic LIMIT/OFFSET paging is used.
+ * {@code maxStars} / {@code maxGenres} cap each movie's star and genre lists.
+ */
+public record Page(int limit, int offset, SeekCursor after, int maxStars, int maxGenres) {
+    public static final int DEFAULT_LIST_CAP = 3;
+    // server-side ceiling for maxStars / maxGenres request parameters
+    public static final int MAX_LIST_CAP = 10;
+
+    public Page(int limit, int offset, SeekCursor after) {
+        this(limit, offset, after, DEFAULT_LIST_CAP, DEFAULT_LIST_CAP);
+    }
+
+    public Page(int limit, int offset) {
+        this(limit, offset, null);
+    }
+
+    public boolean isSeek() {
+        return after != null;
+    }
 }
@@ -0,0 +1,152 @@
+package search;
+
+import utils.Compression;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Byte-bounded LRU + TTL cache of already-encoded UTF-8 JSON page bodies, so a hit
+ * skips JDBC and {@link MovieJsonWriter} entirely.
+ */
+public final class ResultCache {
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    private static final long DEFAULT_TTL_MILLIS = 60_000;
+    // rough per-entry overhead of the map node, key record and Entry object
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private static final ResultCache SHARED = new ResultCache(DEFAULT_MAX_BYTES, DEFAULT_TTL_MILLIS);
+
+    /**
+     * @param endpoint  which servlet produced the body, since the same criteria may render differently
+     * @param criteria  criteria after {@link #normalize(SearchCriteria)}, or null for unfiltered pages
+     * @param cursor    encoded seek cursor, or null for offset paging
+     * @param maxStars  per-movie star cap ({@code maxGenres} likewise), see {@link Page}
+     */
+    public record Key(String endpoint, SearchCriteria criteria, int limit, int offset, String cursor, String orderKey,
+                      int maxStars, int maxGenres) {
+    }
+
+    /**
+     * @param gzipBody gzip copy made once at put time, so hot pages are not recompressed per
+     *                 request; null when the body is below the compression threshold
+     */
+    public record Entry(byte[] body, byte[] gzipBody, String nextCursor, long expiresAt) {
+        int weight() {
+            return body.length + (gzipBody == null ? 0 : gzipBody.length)
+                    + (nextCursor == null ? 0 : nextCursor.length() * 2) + ENTRY_OVERHEAD;
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes) {
+    }
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResultCache(long maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static ResultCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Lowercases the free-text filters (matching is case-insensitive in MySQL anyway) and
+     * drops values the search would ignore, so equivalent requests share one entry.
+     */
+    public static SearchCriteria normalize(SearchCriteria s) {
+        if (s == null || !s.hasAny()) return null;
+        return new SearchCriteria(
+                s.effectiveTitle() != null && s.hasTitle() ? lower(s.title()) : null,
+                s.hasDirector() ? lower(s.director()) : null,
+                s.hasStar() ? lower(s.star()) : null,
+                s.hasYear() ? s.year() : null,
+                s.hasInitial() ? s.initial().toUpperCase(java.util.Locale.ROOT) : null,
+                s.hasGenreId() ? s.genreId() : null,
+                s.hasGenre() ? lower(s.genre()) : null,
+                s.hasGenreIds() ? s.genreIds().stream().distinct().sorted().toList() : List.of(),
+                s.hasGenreIds() && s.allGenres());
+    }
+
+    private static String lower(String v) {
+        return v.toLowerCase(java.util.Locale.ROOT);
+    }
+
+    public Entry get(Key key) {
+        synchronized (map) {
+            Entry e = map.get(key);
+            if (e != null && e.expiresAt() > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return e;
+            }
+            if (e != null) remove(key, e);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return the stored entry (with its gzip copy), or null when the body is too large to cache
+     */
+    public Entry put(Key key, byte[] body, String nextCursor) {
+        if (body.length > maxBytes / 8) return null; // one page should never flush a large part of the cache
+        Entry e = new Entry(body, Compression.precompress(body), nextCursor, System.currentTimeMillis() + ttlMillis);
+        synchronized (map) {
+            Entry old = map.put(key, e);
+            if (old != null) bytes -= old.weight();
+            bytes += e.weight();
+            Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<Key, Entry> eldest = it.next();
+                bytes -= eldest.getValue().weight();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return e;
+    }
+
+    public void invalidateAll() {
+        synchronized (map) {
+            map.clear();
+            bytes = 0;
+        }
+    }
+
+    public void invalidateIf(Predicate<Key> predicate) {
+        synchronized (map) {
+            Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> e = it.next();
+                if (predicate.test(e.getKey())) {
+                    bytes -= e.getValue().weight();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public Stats stats() {
+        synchronized (map) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), map.size(), bytes);
+        }
+    }
+
+    private void remove(Key key, Entry e) {
+        map.remove(key);
+        bytes -= e.weight();
+    }
+}
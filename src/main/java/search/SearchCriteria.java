@@ -1,5 +1,10 @@
 package search;
 
+import java.util.List;
+
+/**
+ * @param genreIds  extra genres to match, any of them, or all of them when {@code allGenres}
+ */
 public record SearchCriteria(
         String title,
         String director,
@@ -7,9 +12,16 @@ public record SearchCriteria(
         Integer year,
         String initial,
         Integer genreId,
-        String genre
+        String genre,
+        List<Integer> genreIds,
+        boolean allGenres
 ) {
 
+    public SearchCriteria(String title, String director, String star, Integer year,
+                          String initial, Integer genreId, String genre) {
+        this(title, director, star, year, initial, genreId, genre, List.of(), false);
+    }
+
     public boolean hasTitle() {
         return title != null && !title.isBlank();
     }
@@ -37,7 +49,8 @@ public record SearchCriteria(
                 || hasStar()
                 || hasYear()
                 || hasInitial()
-                || hasGenreId();
+                || hasGenreId()
+                || hasGenreIds();
     }
 
     public boolean hasInitial() {
@@ -48,6 +61,10 @@ public record SearchCriteria(
         return genreId != null;
     }
 
+    public boolean hasGenreIds() {
+        return genreIds != null && !genreIds.isEmpty();
+    }
+
     public boolean hasGenre() {
         return genre != null && !genre.isBlank();
     }
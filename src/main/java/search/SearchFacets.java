@@ -0,0 +1,75 @@
+package search;
+
+import catalog.MovieCatalog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Resolves the full candidate set of a search as a bitmap over catalog ordinals, so the
+ * total and every facet come from {@link MovieBitmaps} in memory. At most one id query
+ * runs, and none at all when the title and the other filters can be answered in memory.
+ * Every in-memory structure comes from the one {@link SearchSnapshot} the page used.
+ */
+public final class SearchFacets {
+    private SearchFacets() {
+    }
+
+    /**
+     * @return the candidates, or null when the bitmaps are not loaded yet
+     */
+    public static CompactBitmap candidates(Connection c, SearchCriteria s, SearchPlan plan, SearchSnapshot snap) throws SQLException {
+        MovieBitmaps bitmaps = snap.bitmaps();
+        if (bitmaps.isEmpty()) return null;
+        MovieCatalog catalog = bitmaps.catalog();
+        CompactBitmap result = bitmaps.rated();
+        if (!s.hasAny()) return result;
+
+        boolean hasTitle = s.effectiveTitle() != null && s.hasTitle();
+        int[] titleOrdinals = hasTitle ? titleInMemory(s, plan, snap) : null;
+        int titleBit = !hasTitle || titleOrdinals != null ? 0
+                : plan == SearchPlan.FULLTEXT ? FilterShape.FULLTEXT : FilterShape.TITLE;
+
+        if (titleOrdinals != null) result = result.and(CompactBitmap.of(titleOrdinals));
+
+        int shape = FilterShape.maskOf(s, titleBit);
+        if (shape == 0) return result;
+        if ((shape & ~FilterShape.BITMAP_SERVABLE) == 0) {
+            CompactBitmap filtered = bitmaps.filter(s);
+            if (filtered != null) return result.and(filtered);
+        }
+
+        int[] matched = new int[256];
+        int n = 0;
+        try (PreparedStatement ps = c.prepareStatement(FilterShape.idsSql(shape, s))) {
+            FilterShape.bind(ps, 1, shape, s, null);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int ord = catalog.ordinalOf(rs.getString(1));
+                    if (ord < 0) continue;
+                    if (n == matched.length) matched = Arrays.copyOf(matched, n * 2);
+                    matched[n++] = ord;
+                }
+            }
+        }
+        return result.and(CompactBitmap.of(matched, n));
+    }
+
+    // same title semantics as the page query, when it can be answered without SQL; null when the
+    // title index does not number movies like the bitmaps do, so the ids come from SQL instead
+    private static int[] titleInMemory(SearchCriteria s, SearchPlan plan, SearchSnapshot snap) {
+        TitleNgramIndex index = snap.titles();
+        if (index.catalog() != snap.bitmaps().catalog()) return null;
+        if (plan == SearchPlan.FUZZY_TITLE) {
+            int[] rank = snap.rankings().positions(utils.SqlSortUtils.defaultOrderKey());
+            return FuzzyTitleMatcher.match(index, rank, s.effectiveTitle(), FuzzyTitleMatcher.DEFAULT_BUDGET_NANOS);
+        }
+        if (plan == SearchPlan.TITLE_INDEX && !index.isEmpty()) {
+            return index.match(s.effectiveTitle());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+package search;
+
+import com.google.gson.stream.JsonWriter;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import utils.MetricsAccess;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Counters of the shared {@link ResultCache} since startup, so its hit rate and eviction
+ * pressure can be checked against the byte budget. Off unless {@link MetricsAccess} allows
+ * the client.
+ */
+@WebServlet(name = "SearchMetricsServlet", urlPatterns = "/api/metrics/search")
+public class SearchMetricsServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!MetricsAccess.allowed(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        ResultCache.Stats s = ResultCache.shared().stats();
+        long lookups = s.hits() + s.misses();
+
+        StringWriter body = new StringWriter();
+        JsonWriter jw = new JsonWriter(body);
+        jw.beginObject();
+        jw.name("resultCache").beginObject();
+        jw.name("hits").value(s.hits());
+        jw.name("misses").value(s.misses());
+        jw.name("hitRatio").value(lookups == 0 ? 0 : (double) s.hits() / lookups);
+        jw.name("evictions").value(s.evictions());
+        jw.name("entries").value(s.entries());
+        jw.name("estimatedBytes").value(s.bytes());
+        jw.endObject();
+        jw.endObject();
+        jw.flush();
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(body.toString());
+    }
+}
@@ -2,53 +2,112 @@ package search;
 
 import java.sql.*;
 
-import static search.SqlTemplates.multiFilterPagedSql;
+import static search.SqlTemplates.idPageSql;
 import static search.SqlTemplates.topPagedSql;
 
 public enum SearchPlan {
     MULTI_FILTER {
         @Override
-        public PreparedStatement prepare(Connection c, SearchCriteria s, Page p, String orderKey) throws SQLException {
-            String sql = multiFilterPagedSql(orderKey);
-            PreparedStatement ps = c.prepareStatement(sql);
-            int i = 1;
-
-            String title = s.effectiveTitle();
-            String likeTitle = (title != null && !title.isBlank()) ? "%" + title + "%" : null;
-            ps.setObject(i++, likeTitle);
-            ps.setString(i++, likeTitle);
-
-            Integer year = s.hasYear() ? s.year() : null;
-            ps.setObject(i++, year);
-            if (year == null) ps.setNull(i++, Types.INTEGER);
-            else ps.setInt(i++, year);
-
-            String likeDir = s.hasDirector() ? "%" + s.director() + "%" : null;
-            ps.setObject(i++, likeDir);
-            ps.setString(i++, likeDir);
-
-            String likeStar = s.hasStar() ? "%" + s.star() + "%" : null;
-            ps.setObject(i++, likeStar);
-            ps.setString(i++, likeStar);
-
-            String letter = (s.hasInitial() && !"0-9".equalsIgnoreCase(s.initial())) ? s.initial() : null;
-            ps.setObject(i++, letter);
-            ps.setString(i++, letter);
+        public PreparedStatement prepare(Connection c, SearchSnapshot snap, SearchCriteria s, Page p, String orderKey) throws SQLException {
+            int shape = FilterShape.maskOf(s, FilterShape.TITLE);
+            PreparedStatement ps = c.prepareStatement(FilterShape.sql(shape, s, orderKey, p.isSeek(), 0));
+            int i = FilterShape.bind(ps, 1, shape, s, null);
+            bindPage(ps, i, p);
+            return ps;
+        }
+    },
 
-            String digits = (s.hasInitial() && "0-9".equalsIgnoreCase(s.initial())) ? "0-9" : null;
-            ps.setObject(i++, digits);
+    // Title substring resolved to ids by TitleNgramIndex; MySQL only sees "m.id IN (...)"
+    TITLE_INDEX {
+        @Override
+        public PreparedStatement prepare(Connection c, SearchSnapshot snap, SearchCriteria s, Page p, String orderKey) throws SQLException {
+            TitleNgramIndex index = snap.titles();
+            int[] ordinals = index.isEmpty() ? null : index.match(s.effectiveTitle());
+            if (ordinals == null || ordinals.length > MAX_ID_SET) {
+                return MULTI_FILTER.prepare(c, snap, s, p, orderKey);
+            }
+
+            String[] ids = new String[ordinals.length];
+            for (int k = 0; k < ordinals.length; k++) {
+                ids[k] = index.catalog().id(ordinals[k]);
+            }
+
+            int shape = FilterShape.maskOf(s, FilterShape.ID_SET);
+            PreparedStatement ps = c.prepareStatement(FilterShape.sql(shape, s, orderKey, p.isSeek(), ids.length));
+            int i = FilterShape.bind(ps, 1, shape, s, ids);
+            bindPage(ps, i, p);
+            return ps;
+        }
+    },
 
-            Integer gid = s.hasGenreId() ? s.genreId() : null;
-            ps.setObject(i++, gid);
-            if (gid == null) ps.setNull(i++, Types.INTEGER);
-            else ps.setInt(i++, gid);
+    // Multi-keyword title through the FULLTEXT index on movies.title, once FullTextQuery.probe found it
+    FULLTEXT {
+        @Override
+        public PreparedStatement prepare(Connection c, SearchSnapshot snap, SearchCriteria s, Page p, String orderKey) throws SQLException {
+            if (!FullTextQuery.isIndexed()) return TITLE_INDEX.prepare(c, snap, s, p, orderKey);
+            if (FullTextQuery.toBooleanQuery(s.effectiveTitle()) == null) {
+                return MULTI_FILTER.prepare(c, snap, s, p, orderKey);
+            }
+            int shape = FilterShape.maskOf(s, FilterShape.FULLTEXT);
+            PreparedStatement ps = c.prepareStatement(FilterShape.sql(shape, s, orderKey, p.isSeek(), 0));
+            int i = FilterShape.bind(ps, 1, shape, s, null);
+            bindPage(ps, i, p);
+            return ps;
+        }
+    },
 
-            String gname = s.hasGenre() ? s.genre() : null;
-            ps.setObject(i++, gname);
-            ps.setString(i++, gname);
+    // fuzzy=true: typo-tolerant title, ranked by similarity then rating (see FuzzyTitleMatcher)
+    FUZZY_TITLE {
+        @Override
+        public PreparedStatement prepare(Connection c, SearchSnapshot snap, SearchCriteria s, Page p, String orderKey) throws SQLException {
+            // ranks and ordinals from one snapshot, so each ordinal is ranked by its own movie's rating
+            int[] rank = snap.rankings().positions(utils.SqlSortUtils.defaultOrderKey());
+            TitleNgramIndex index = snap.titles();
+            int[] ordinals = FuzzyTitleMatcher.match(index, rank, s.effectiveTitle(), FuzzyTitleMatcher.DEFAULT_BUDGET_NANOS);
+            if (ordinals == null) return TITLE_INDEX.prepare(c, snap, s, p, orderKey);
+
+            int shape = FilterShape.maskOf(s, FilterShape.ID_SET);
+            if (shape == FilterShape.ID_SET) {
+                // title only: keep the similarity order and page in memory
+                int from = Math.min(p.offset(), ordinals.length);
+                int to = Math.min(ordinals.length, from + p.limit());
+                PreparedStatement ps = c.prepareStatement(idPageSql(to - from));
+                for (int k = from; k < to; k++) {
+                    ps.setString(k - from + 1, index.catalog().id(ordinals[k]));
+                }
+                bindListCaps(ps, to - from + 1, p);
+                return ps;
+            }
+
+            // other filters too: let SQL apply them over the fuzzy candidates, in the requested order
+            String[] ids = new String[Math.min(ordinals.length, MAX_ID_SET)];
+            for (int k = 0; k < ids.length; k++) {
+                ids[k] = index.catalog().id(ordinals[k]);
+            }
+            PreparedStatement ps = c.prepareStatement(FilterShape.sql(shape, s, orderKey, p.isSeek(), ids.length));
+            int i = FilterShape.bind(ps, 1, shape, s, ids);
+            bindPage(ps, i, p);
+            return ps;
+        }
+    },
 
-            ps.setInt(i++, p.limit());
-            ps.setInt(i++, p.offset());
+    // year / initial / genre filters only: intersect MovieBitmaps, then walk the ranking for the page
+    BITMAP {
+        @Override
+        public PreparedStatement prepare(Connection c, SearchSnapshot snap, SearchCriteria s, Page p, String orderKey) throws SQLException {
+            // filter ordinals are only meaningful against rankings numbered by the same catalog
+            MovieBitmaps bitmaps = snap.bitmaps();
+            TopRankings rankings = snap.rankings();
+            boolean usable = !bitmaps.isEmpty() && bitmaps.catalog() == rankings.catalog();
+            CompactBitmap filter = usable ? bitmaps.filter(s) : null;
+            String[] ids = filter == null ? null : rankings.page(orderKey, p, filter);
+            if (ids == null) return MULTI_FILTER.prepare(c, snap, s, p, orderKey);
+
+            PreparedStatement ps = c.prepareStatement(idPageSql(ids.length));
+            for (int i = 0; i < ids.length; i++) {
+                ps.setString(i + 1, ids[i]);
+            }
+            bindListCaps(ps, ids.length + 1, p);
             return ps;
         }
     },
@@ -56,25 +115,79 @@ public enum SearchPlan {
     // NEW: handle "no filters" – reuse the same paging/sorting pipeline
     TOP {
         @Override
-        public PreparedStatement prepare(Connection c, SearchCriteria s, Page p, String orderKey) throws SQLException {
-            String sql = topPagedSql(orderKey);
+        public PreparedStatement prepare(Connection c, SearchSnapshot snap, SearchCriteria s, Page p, String orderKey) throws SQLException {
+            // precomputed ordering: the page is an array slice, MySQL only fetches details by id
+            String[] ids = snap.rankings().page(orderKey, p);
+            if (ids != null) {
+                PreparedStatement ps = c.prepareStatement(idPageSql(ids.length));
+                for (int i = 0; i < ids.length; i++) {
+                    ps.setString(i + 1, ids[i]);
+                }
+                bindListCaps(ps, ids.length + 1, p);
+                return ps;
+            }
+
+            String sql = topPagedSql(orderKey, p.isSeek());
             PreparedStatement ps = c.prepareStatement(sql);
-            int i = 1;
-            ps.setInt(i++, p.limit());
-            ps.setInt(i++, p.offset());
+            bindPage(ps, 1, p);
             return ps;
         }
     };
 
-    public abstract PreparedStatement prepare(Connection c, SearchCriteria s, Page p, String orderKey) throws SQLException;
+    // above this many candidates an IN list stops beating the LIKE scan
+    static final int MAX_ID_SET = 2_000;
+
+    // seek values (if any) sit in page_ids right before LIMIT ? OFFSET ?; the list caps follow
+    private static void bindPage(PreparedStatement ps, int i, Page p) throws SQLException {
+        if (p.isSeek()) i = p.after().bind(ps, i);
+        ps.setInt(i++, p.limit());
+        ps.setInt(i++, p.isSeek() ? 0 : p.offset());
+        bindListCaps(ps, i, p);
+    }
+
+    // the two "rn <= ?" caps of stars_page / genres_page come last in every page statement
+    private static void bindListCaps(PreparedStatement ps, int i, Page p) throws SQLException {
+        ps.setInt(i++, p.maxStars());
+        ps.setInt(i, p.maxGenres());
+    }
+
+    /**
+     * Prepares the page statement; every in-memory structure the plan consults is taken from
+     * {@code snap}, so callers that also compute counts should pass the same snapshot there.
+     */
+    public abstract PreparedStatement prepare(Connection c, SearchSnapshot snap, SearchCriteria s, Page p, String orderKey) throws SQLException;
+
+    public PreparedStatement prepare(Connection c, SearchCriteria s, Page p, String orderKey) throws SQLException {
+        return prepare(c, SearchSnapshot.current(), s, p, orderKey);
+    }
 
     // Back-compat 3-arg
     public PreparedStatement prepare(Connection c, SearchCriteria s, Page p) throws SQLException {
         return prepare(c, s, p, "r.rating DESC, m.title ASC, m.id ASC");
     }
 
+    public static SearchPlan choose(SearchCriteria s, boolean fuzzy) {
+        return choose(s, fuzzy, SearchSnapshot.current());
+    }
+
     public static SearchPlan choose(SearchCriteria s) {
+        return choose(s, false, SearchSnapshot.current());
+    }
+
+    /**
+     * Picks the plan for the criteria; {@code snap} should be the snapshot later passed to
+     * {@link #prepare(Connection, SearchSnapshot, SearchCriteria, Page, String)}.
+     */
+    public static SearchPlan choose(SearchCriteria s, boolean fuzzy, SearchSnapshot snap) {
+        if (fuzzy && s.effectiveTitle() != null && s.hasTitle()) return FUZZY_TITLE;
         if (!s.hasAny()) return TOP;
+        if (s.effectiveTitle() != null && s.hasTitle()) {
+            return FullTextQuery.isIndexed() && FullTextQuery.prefers(s.effectiveTitle()) ? FULLTEXT : TITLE_INDEX;
+        }
+        if (!s.hasDirector() && !s.hasStar()
+                && !snap.bitmaps().isEmpty() && snap.rankings().catalog().size() > 0) {
+            return BITMAP;
+        }
         return MULTI_FILTER;
     }
 }
@@ -0,0 +1,31 @@
+package search;
+
+import catalog.MovieCatalog;
+
+/**
+ * The in-memory search structures of one catalog load, published together through a single
+ * volatile field. They all address movies by catalog ordinal, and a full reload reassigns
+ * every ordinal, so a request reads {@link #current()} once and takes every structure from
+ * that snapshot; mixing parts of two snapshots pairs ordinals with the wrong movies.
+ * All parts are built over the very same {@link MovieCatalog} instance.
+ */
+public record SearchSnapshot(MovieCatalog catalog, TitleNgramIndex titles, TopRankings rankings, MovieBitmaps bitmaps) {
+    public static final SearchSnapshot EMPTY =
+            new SearchSnapshot(MovieCatalog.EMPTY, TitleNgramIndex.EMPTY, TopRankings.EMPTY, MovieBitmaps.EMPTY);
+
+    private static volatile SearchSnapshot current = EMPTY;
+
+    public SearchSnapshot {
+        if (titles.catalog() != catalog || rankings.catalog() != catalog || bitmaps.catalog() != catalog) {
+            throw new IllegalArgumentException("Search snapshot parts were built over different catalogs");
+        }
+    }
+
+    public static SearchSnapshot current() {
+        return current;
+    }
+
+    public static void publish(SearchSnapshot snapshot) {
+        current = snapshot;
+    }
+}
@@ -0,0 +1,100 @@
+package search;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Base64;
+
+/**
+ * Opaque keyset-pagination token: the last {@code (sort key 1, sort key 2, m.id)} tuple
+ * of a page, for an order key built by {@link utils.SqlSortUtils#buildOrderKey}.
+ * The next page seeks past that tuple instead of skipping rows with OFFSET.
+ */
+public record SeekCursor(int orderKeyHash, String key1, String key2, String id) {
+
+    public static final int BIND_COUNT = 5;
+    public static final String HEADER = "X-Next-Cursor";
+
+    public static SeekCursor after(String orderKey, String rating, String title, String id) {
+        String[] cols = columns(orderKey);
+        return new SeekCursor(orderKey.hashCode(),
+                valueFor(cols[0], rating, title),
+                valueFor(cols[1], rating, title),
+                id);
+    }
+
+    public String encode() {
+        JsonArray a = new JsonArray();
+        a.add(orderKeyHash);
+        a.add(key1);
+        a.add(key2);
+        a.add(id);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(a.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the token is malformed or was issued for another ordering
+     */
+    public static SeekCursor decode(String token, String orderKey) {
+        SeekCursor c;
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            JsonArray a = JsonParser.parseString(json).getAsJsonArray();
+            c = new SeekCursor(a.get(0).getAsInt(), a.get(1).getAsString(), a.get(2).getAsString(), a.get(3).getAsString());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        if (c.orderKeyHash != orderKey.hashCode()) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort order");
+        }
+        return c;
+    }
+
+    /**
+     * Seek predicate for the page_ids CTE, with {@link #BIND_COUNT} placeholders:
+     * {@code k1 past ? OR (k1 = ? AND (k2 past ? OR (k2 = ? AND m.id > ?)))}.
+     */
+    public static String predicate(String orderKey) {
+        String[] parts = orderKey.split(",\\s*");
+        String c1 = column(parts[0]), c2 = column(parts[1]);
+        return "(" + c1 + op(parts[0]) + param(c1)
+                + " OR (" + c1 + " = " + param(c1)
+                + " AND (" + c2 + op(parts[1]) + param(c2)
+                + " OR (" + c2 + " = " + param(c2) + " AND m.id > ?))))";
+    }
+
+    public int bind(PreparedStatement ps, int i) throws SQLException {
+        ps.setString(i++, key1);
+        ps.setString(i++, key1);
+        ps.setString(i++, key2);
+        ps.setString(i++, key2);
+        ps.setString(i++, id);
+        return i;
+    }
+
+    private static String[] columns(String orderKey) {
+        String[] parts = orderKey.split(",\\s*");
+        return new String[]{column(parts[0]), column(parts[1])};
+    }
+
+    private static String column(String part) {
+        return part.trim().split("\\s+")[0];
+    }
+
+    private static String op(String part) {
+        return part.trim().toUpperCase().endsWith("DESC") ? " < " : " > ";
+    }
+
+    // ratings.rating is FLOAT: compare against a FLOAT too, or equality never matches
+    private static String param(String column) {
+        return "r.rating".equals(column) ? "CAST(? AS FLOAT)" : "?";
+    }
+
+    private static String valueFor(String column, String rating, String title) {
+        return "r.rating".equals(column) ? rating : title;
+    }
+}
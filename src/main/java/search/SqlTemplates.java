@@ -1,25 +1,50 @@
 package search;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 public final class SqlTemplates {
     private SqlTemplates() {
     }
 
+    // Per-movie caps are pushed down: ROW_NUMBER keeps the first maxStars / maxGenres rows (binds 1 and 2
+    // after the page binds), and JSON_ARRAYAGG runs as a window ordered by that number so the array order
+    // is deterministic (stars and genres by name, then id).
     private static final String AGG_FOR_PAGE = """
             , stars_page AS (
-                SELECT sim.movie_id,
-                       JSON_ARRAYAGG(JSON_OBJECT('id', s.id, 'name', s.name)) AS all_stars
-                FROM stars_in_movies sim
-                JOIN stars s ON s.id = sim.star_id
-                WHERE sim.movie_id IN (SELECT id FROM page_ids)
-                GROUP BY sim.movie_id
+                SELECT w.movie_id, w.all_stars
+                FROM (
+                  SELECT ranked.movie_id, ranked.rn,
+                         JSON_ARRAYAGG(JSON_OBJECT('id', ranked.id, 'name', ranked.name)) OVER (
+                           PARTITION BY ranked.movie_id ORDER BY ranked.rn
+                           ROWS BETWEEN UNBOUNDED PRECEDING AND UNBOUNDED FOLLOWING) AS all_stars
+                  FROM (
+                    SELECT sim.movie_id, s.id, s.name,
+                           ROW_NUMBER() OVER (PARTITION BY sim.movie_id ORDER BY s.name, s.id) AS rn
+                    FROM stars_in_movies sim
+                    JOIN stars s ON s.id = sim.star_id
+                    WHERE sim.movie_id IN (SELECT id FROM page_ids)
+                  ) AS ranked
+                  WHERE ranked.rn <= ?
+                ) AS w
+                WHERE w.rn = 1
               )
             , genres_page AS (
-                SELECT gim.movie_id,
-                       JSON_ARRAYAGG(JSON_OBJECT('id', g.id, 'name', g.name)) AS all_genres
-                FROM genres_in_movies gim
-                JOIN genres g ON g.id = gim.genre_id
-                WHERE gim.movie_id IN (SELECT id FROM page_ids)
-                GROUP BY gim.movie_id
+                SELECT w.movie_id, w.all_genres
+                FROM (
+                  SELECT ranked.movie_id, ranked.rn,
+                         JSON_ARRAYAGG(JSON_OBJECT('id', ranked.id, 'name', ranked.name)) OVER (
+                           PARTITION BY ranked.movie_id ORDER BY ranked.rn
+                           ROWS BETWEEN UNBOUNDED PRECEDING AND UNBOUNDED FOLLOWING) AS all_genres
+                  FROM (
+                    SELECT gim.movie_id, g.id, g.name,
+                           ROW_NUMBER() OVER (PARTITION BY gim.movie_id ORDER BY g.name, g.id) AS rn
+                    FROM genres_in_movies gim
+                    JOIN genres g ON g.id = gim.genre_id
+                    WHERE gim.movie_id IN (SELECT id FROM page_ids)
+                  ) AS ranked
+                  WHERE ranked.rn <= ?
+                ) AS w
+                WHERE w.rn = 1
               )
             """;
 
@@ -32,8 +57,8 @@ public final class SqlTemplates {
               m.director,
               r.rating,
               r.vote_count,
-              COALESCE(JSON_EXTRACT(sp.all_stars,  '$[0 to 2]'), JSON_ARRAY()) AS stars,
-              COALESCE(JSON_EXTRACT(gp.all_genres, '$[0 to 2]'), JSON_ARRAY()) AS genres
+              COALESCE(sp.all_stars,  JSON_ARRAY()) AS stars,
+              COALESCE(gp.all_genres, JSON_ARRAY()) AS genres
             FROM movies m
             JOIN ratings r  ON r.movie_id = m.id
             JOIN page_ids p ON p.id       = m.id
@@ -42,25 +67,62 @@ public final class SqlTemplates {
             ORDER BY p.seq
             """;
 
-    // Search plan (multi-filter) with injected order key for page_ids
-    private static final String MULTI_FILTER_PAGED_FMT = """
+    // Alternative to AGG_FOR_PAGE + FINAL_SELECT_NO_ORDER: one movie row (kind 0) followed by flat star
+    // (kind 1) and genre (kind 2) rows per page entry, assembled by MovieJsonWriter in one pass.
+    // Same caps and order as AGG_FOR_PAGE.
+    private static final String ROWS_FINAL_SELECT = """
+            SELECT p.seq, 0 AS kind, 0 AS rn, m.id, m.title AS title_name, m.year, m.director,
+                   r.rating, r.vote_count, NULL AS ref_id
+            FROM page_ids p
+            JOIN movies m  ON m.id       = p.id
+            JOIN ratings r ON r.movie_id = m.id
+            UNION ALL
+            SELECT p.seq, 1, ranked.rn, ranked.movie_id, ranked.name, NULL, NULL, NULL, NULL, ranked.id
+            FROM page_ids p
+            JOIN (
+              SELECT sim.movie_id, s.id, s.name,
+                     ROW_NUMBER() OVER (PARTITION BY sim.movie_id ORDER BY s.name, s.id) AS rn
+              FROM stars_in_movies sim
+              JOIN stars s ON s.id = sim.star_id
+              WHERE sim.movie_id IN (SELECT id FROM page_ids)
+            ) AS ranked ON ranked.movie_id = p.id
+            WHERE ranked.rn <= ?
+            UNION ALL
+            SELECT p.seq, 2, ranked.rn, ranked.movie_id, ranked.name, NULL, NULL, NULL, NULL, CAST(ranked.id AS CHAR)
+            FROM page_ids p
+            JOIN (
+              SELECT gim.movie_id, g.id, g.name,
+                     ROW_NUMBER() OVER (PARTITION BY gim.movie_id ORDER BY g.name, g.id) AS rn
+              FROM genres_in_movies gim
+              JOIN genres g ON g.id = gim.genre_id
+              WHERE gim.movie_id IN (SELECT id FROM page_ids)
+            ) AS ranked ON ranked.movie_id = p.id
+            WHERE ranked.rn <= ?
+            ORDER BY seq, kind, rn
+            """;
+
+    /**
+     * Who builds the star/genre lists of a page: MySQL ({@code JSON_ARRAYAGG}) or the app
+     * (flat rows). Fixed per JVM with {@code -Dsearch.resultMode=rows} so every cached SQL
+     * text and {@link MovieJsonWriter} agree; switch it to compare DB CPU against app CPU.
+     */
+    public enum ResultMode {
+        JSON, ROWS
+    }
+
+    public static final ResultMode RESULT_MODE =
+            "rows".equalsIgnoreCase(System.getProperty("search.resultMode")) ? ResultMode.ROWS : ResultMode.JSON;
+
+    private static final String PAGE_DETAILS =
+            RESULT_MODE == ResultMode.ROWS ? ROWS_FINAL_SELECT : AGG_FOR_PAGE + FINAL_SELECT_NO_ORDER;
+
+    // Search plan (multi-filter): the filtered CTE body comes from FilterShape, one per predicate shape
+    private static final String FILTERED_PAGED_FMT = """
             WITH
               filtered AS (
-                SELECT DISTINCT m.id
+                SELECT m.id
                 FROM movies m
-                LEFT JOIN stars_in_movies sim ON sim.movie_id = m.id
-                LEFT JOIN stars s            ON s.id = sim.star_id
-                LEFT JOIN genres_in_movies gim ON gim.movie_id = m.id
-                LEFT JOIN genres g             ON g.id = gim.genre_id
-                WHERE
-                  (? IS NULL OR m.title LIKE ?) AND
-                  (? IS NULL OR m.year = ?) AND
-                  (? IS NULL OR m.director LIKE ?) AND
-                  (? IS NULL OR s.name LIKE ?) AND
-                  (? IS NULL OR UPPER(SUBSTRING(m.title,1,1)) = UPPER(?)) AND
-                  (? IS NULL OR SUBSTRING(m.title,1,1) BETWEEN '0' AND '9') AND
-                  (? IS NULL OR g.id = ?) AND
-                  (? IS NULL OR g.name = ?)
+                WHERE %s
               ),
               page_ids AS (
                 SELECT
@@ -69,16 +131,42 @@ public final class SqlTemplates {
                 FROM filtered f
                 JOIN ratings r ON r.movie_id = f.id
                 JOIN movies  m ON m.id       = f.id
+                WHERE %s
                 ORDER BY %s
                 LIMIT ? OFFSET ?
               )
-            """ + AGG_FOR_PAGE + FINAL_SELECT_NO_ORDER;
+            """ + PAGE_DETAILS;
 
     /**
-     * Build final SQL for multi-filter paging with given order key
+     * Build final SQL for multi-filter paging with the given WHERE clause over {@code movies m}
      */
-    public static String multiFilterPagedSql(String orderKey) {
-        return String.format(MULTI_FILTER_PAGED_FMT, orderKey, orderKey);
+    public static String filteredPagedSql(String where, String orderKey, boolean seek) {
+        return String.format(FILTERED_PAGED_FMT, where, orderKey, seekPredicate(orderKey, seek), orderKey);
+    }
+
+    // every matching id (no paging), for counts and facets computed in memory
+    private static final String FILTERED_IDS_FMT = """
+            SELECT m.id
+            FROM movies m
+            JOIN ratings r ON r.movie_id = m.id
+            WHERE %s
+            """;
+
+    public static String filteredIdsSql(String where) {
+        return String.format(FILTERED_IDS_FMT, where);
+    }
+
+    private static String seekPredicate(String orderKey, boolean seek) {
+        return seek ? SeekCursor.predicate(orderKey) : "TRUE";
+    }
+
+    static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder(n * 3);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('?');
+        }
+        return sb.toString();
     }
 
     // Top/All movies (MovieServlet) with CTE-based paging, reuse same pattern
@@ -89,12 +177,114 @@ public final class SqlTemplates {
                 ROW_NUMBER() OVER (ORDER BY %s) AS seq
               FROM movies m
               JOIN ratings r ON r.movie_id = m.id
+              WHERE %s
               ORDER BY %s
               LIMIT ? OFFSET ?
             )
-            """ + AGG_FOR_PAGE + FINAL_SELECT_NO_ORDER;
+            """ + PAGE_DETAILS;
+
+    // Page of known ids in known order (ids come from an in-memory ranking); only detail rows hit MySQL
+    private static final String ID_PAGE_FMT = """
+            WITH page_ids AS (
+              %s
+            )
+            """ + PAGE_DETAILS;
+
+    private static final ConcurrentHashMap<Integer, String> ID_PAGE_BY_COUNT = new ConcurrentHashMap<>();
+
+    /**
+     * page_ids is built from {@code idCount} bound ids, with seq following bind order
+     */
+    public static String idPageSql(int idCount) {
+        return ID_PAGE_BY_COUNT.computeIfAbsent(idCount, n -> String.format(ID_PAGE_FMT, idRows(n)));
+    }
+
+    private static String idRows(int n) {
+        if (n == 0) return "SELECT NULL AS id, 0 AS seq FROM DUAL WHERE FALSE";
+        StringBuilder rows = new StringBuilder("SELECT ? AS id, 1 AS seq");
+        for (int i = 2; i <= n; i++) {
+            rows.append(" UNION ALL SELECT ?, ").append(i);
+        }
+        return rows.toString();
+    }
+
+    // Full movie details (every star and genre) for a batch of ids, one row per found id in bind order.
+    // Second %s orders each cast: by name when the caller re-ranks by StarPopularity, else by counting in SQL.
+    private static final String MOVIE_DETAILS_FMT = """
+            WITH page_ids AS (
+              %s
+            ),
+            stars_json AS (
+              SELECT star_sorted.movie_id,
+                     JSON_ARRAYAGG(JSON_OBJECT('id', star_sorted.id, 'name', star_sorted.name)) AS stars
+              FROM (
+                SELECT sim.movie_id, s.id, s.name
+                FROM stars_in_movies sim
+                JOIN stars s ON s.id = sim.star_id
+                %s
+              ) AS star_sorted
+              GROUP BY star_sorted.movie_id
+            ),
+            genres_json AS (
+              SELECT g_sorted.movie_id,
+                     JSON_ARRAYAGG(JSON_OBJECT('id', g_sorted.id, 'name', g_sorted.name)) AS genres
+              FROM (
+                SELECT gim.movie_id, g.id, g.name
+                FROM genres_in_movies gim
+                JOIN genres g ON g.id = gim.genre_id
+                WHERE gim.movie_id IN (SELECT id FROM page_ids)
+                ORDER BY g.name
+              ) AS g_sorted
+              GROUP BY g_sorted.movie_id
+            )
+            SELECT
+              m.id,
+              m.title        AS title_name,
+              m.year,
+              m.director,
+              r.rating,
+              r.vote_count,
+              COALESCE(sj.stars,  JSON_ARRAY()) AS stars,
+              COALESCE(gj.genres, JSON_ARRAY()) AS genres
+            FROM page_ids p
+            JOIN movies m  ON m.id       = p.id
+            JOIN ratings r ON r.movie_id = m.id
+            LEFT JOIN stars_json  sj ON sj.movie_id = m.id
+            LEFT JOIN genres_json gj ON gj.movie_id = m.id
+            ORDER BY p.seq
+            """;
+
+    private static final String STARS_BY_NAME = """
+            WHERE sim.movie_id IN (SELECT id FROM page_ids)
+                ORDER BY s.name ASC""";
+
+    private static final String STARS_BY_COUNT = """
+            LEFT JOIN (
+                  SELECT star_id, COUNT(*) AS count
+                  FROM stars_in_movies
+                  GROUP BY star_id
+                ) sc ON sc.star_id = s.id
+                WHERE sim.movie_id IN (SELECT id FROM page_ids)
+                ORDER BY COALESCE(sc.count, 0) DESC, s.name ASC""";
+
+    private static final ConcurrentHashMap<Integer, String> MOVIE_DETAILS_BY_COUNT = new ConcurrentHashMap<>();
+
+    /**
+     * @param countStars order each cast by movie count in SQL, for when StarPopularity is not loaded
+     */
+    public static String movieDetailsSql(int idCount, boolean countStars) {
+        return MOVIE_DETAILS_BY_COUNT.computeIfAbsent(idCount * 2 + (countStars ? 1 : 0), k ->
+                String.format(MOVIE_DETAILS_FMT, idRows(idCount), countStars ? STARS_BY_COUNT : STARS_BY_NAME));
+    }
 
     public static String topPagedSql(String orderKey) {
-        return String.format(TOP_PAGED_FMT, orderKey, orderKey);
+        return topPagedSql(orderKey, false);
+    }
+
+    /**
+     * @param seek when true the page_ids CTE carries a {@link SeekCursor#predicate} before LIMIT
+     */
+    public static String topPagedSql(String orderKey, boolean seek) {
+        return String.format(TOP_PAGED_FMT, orderKey, seekPredicate(orderKey, seek), orderKey);
     }
 }
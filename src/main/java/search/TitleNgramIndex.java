@@ -0,0 +1,170 @@
+package search;
+
+import catalog.MovieCatalog;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Trigram index over {@code movies.title}, used to answer {@code title LIKE '%x%'}
+ * without scanning the table. Posting lists hold catalog ordinals in ascending order.
+ */
+public final class TitleNgramIndex {
+    static final int GRAM = 3;
+
+    public static final TitleNgramIndex EMPTY = new TitleNgramIndex(MovieCatalog.EMPTY, new String[0], Map.of());
+
+    private final MovieCatalog catalog;
+    private final String[] normalized;
+    private final Map<Long, int[]> postings;
+
+    private TitleNgramIndex(MovieCatalog catalog, String[] normalized, Map<Long, int[]> postings) {
+        this.catalog = catalog;
+        this.normalized = normalized;
+        this.postings = postings;
+    }
+
+    public MovieCatalog catalog() {
+        return catalog;
+    }
+
+    public boolean isEmpty() {
+        return catalog.size() == 0;
+    }
+
+    /**
+     * Indexes the ordinals the given catalog added on top of this index's catalog,
+     * which must come from {@link MovieCatalog#refresh}. Only the posting lists
+     * touched by the new titles are copied.
+     */
+    public TitleNgramIndex extend(MovieCatalog newer) {
+        if (newer == catalog) return this;
+        int from = catalog.size();
+        int to = newer.size();
+        if (to < from) return build(newer);
+
+        String[] norm = Arrays.copyOf(normalized, to);
+        Map<Long, IntList> added = new HashMap<>();
+        for (int ord = from; ord < to; ord++) {
+            norm[ord] = normalize(newer.title(ord));
+            addGrams(added, norm[ord], ord);
+        }
+
+        Map<Long, int[]> merged = new HashMap<>(postings);
+        for (Map.Entry<Long, IntList> e : added.entrySet()) {
+            int[] old = merged.getOrDefault(e.getKey(), new int[0]);
+            int[] tail = e.getValue().toArray();
+            int[] joined = Arrays.copyOf(old, old.length + tail.length);
+            System.arraycopy(tail, 0, joined, old.length, tail.length);
+            merged.put(e.getKey(), joined);
+        }
+        return new TitleNgramIndex(newer, norm, merged);
+    }
+
+    public static TitleNgramIndex build(MovieCatalog catalog) {
+        return EMPTY.extend(catalog);
+    }
+
+    /**
+     * Resolves a substring query to matching ordinals, ascending.
+     *
+     * @return null when the query cannot be served by the index (too short, or it
+     * contains LIKE wildcards) and the caller should fall back to SQL
+     */
+    public int[] match(String query) {
+        if (query == null) return null;
+        if (query.indexOf('%') >= 0 || query.indexOf('_') >= 0) return null;
+        String q = normalize(query);
+        if (q.length() < GRAM) return null;
+
+        List<int[]> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM <= q.length(); i++) {
+            int[] list = postings.get(key(q, i));
+            if (list == null) return new int[0];
+            lists.add(list);
+        }
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+
+        int[] acc = lists.get(0);
+        for (int i = 1; i < lists.size() && acc.length > 0; i++) {
+            acc = intersect(acc, lists.get(i));
+        }
+
+        // grams only narrow the set; confirm the substring actually occurs
+        int n = 0;
+        int[] out = new int[acc.length];
+        for (int ord : acc) {
+            if (normalized[ord].contains(q)) out[n++] = ord;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    // posting list of the gram starting at q[i], or null when no title contains it
+    int[] postings(String normalizedQuery, int i) {
+        return postings.get(key(normalizedQuery, i));
+    }
+
+    String normalizedTitle(int ordinal) {
+        return normalized[ordinal];
+    }
+
+    /**
+     * Lowercases and strips accents so matching follows MySQL's default
+     * accent- and case-insensitive collation.
+     */
+    public static String normalize(String s) {
+        if (s == null) return "";
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static void addGrams(Map<Long, IntList> target, String s, int ord) {
+        for (int i = 0; i + GRAM <= s.length(); i++) {
+            IntList list = target.computeIfAbsent(key(s, i), k -> new IntList());
+            // a title repeating a gram should only post its ordinal once
+            if (list.size == 0 || list.last() != ord) list.add(ord);
+        }
+    }
+
+    private static long key(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static final class IntList {
+        int[] data = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int last() {
+            return data[size - 1];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
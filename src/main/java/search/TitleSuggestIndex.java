@@ -0,0 +1,157 @@
+package search;
+
+import catalog.MovieCatalog;
+import utils.SqlSortUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typeahead over titles: every word start of every normalized title, as a sorted array of
+ * (ordinal, offset) suffixes. A prefix is a binary search plus a scan of the matching range,
+ * keeping the k best movies by the default rating ordering.
+ */
+public final class TitleSuggestIndex {
+    public static final int MAX_K = 20;
+    // results for one- and two-letter prefixes span large ranges, so they are memoized per snapshot;
+    // only [a-z0-9] prefixes are, which caps the memo at 36 + 36 * 36 entries whatever clients send
+    private static final int MEMO_PREFIX_LENGTH = 2;
+
+    private static volatile TitleSuggestIndex current =
+            new TitleSuggestIndex(MovieCatalog.EMPTY, new String[0], new long[0], new int[0]);
+
+    private final MovieCatalog catalog;
+    private final String[] normalized;
+    private final long[] suffixes; // ordinal << 32 | offset, sorted by normalized[ordinal].substring(offset)
+    private final int[] rank;      // position in the default ordering, -1 when unrated
+    private final ConcurrentHashMap<String, int[]> memo = new ConcurrentHashMap<>();
+
+    private TitleSuggestIndex(MovieCatalog catalog, String[] normalized, long[] suffixes, int[] rank) {
+        this.catalog = catalog;
+        this.normalized = normalized;
+        this.suffixes = suffixes;
+        this.rank = rank;
+    }
+
+    public static TitleSuggestIndex current() {
+        return current;
+    }
+
+    public static void publish(TitleSuggestIndex index) {
+        current = index;
+    }
+
+    public MovieCatalog catalog() {
+        return catalog;
+    }
+
+    /**
+     * @return null when the rankings are not loaded yet
+     */
+    public static TitleSuggestIndex build(TopRankings rankings) {
+        int[] rank = rankings.positions(SqlSortUtils.defaultOrderKey());
+        if (rank == null) return null;
+        MovieCatalog catalog = rankings.catalog();
+
+        String[] norm = new String[catalog.size()];
+        List<Long> entries = new ArrayList<>();
+        for (int ord = 0; ord < norm.length; ord++) {
+            if (rank[ord] < 0) continue;
+            norm[ord] = TitleNgramIndex.normalize(catalog.title(ord));
+            String t = norm[ord];
+            for (int i = 0; i < t.length(); i++) {
+                boolean wordStart = Character.isLetterOrDigit(t.charAt(i))
+                        && (i == 0 || !Character.isLetterOrDigit(t.charAt(i - 1)));
+                if (wordStart) entries.add(((long) ord << 32) | i);
+            }
+        }
+        entries.sort((a, b) -> compareSuffixes(norm, a, b));
+
+        long[] sorted = new long[entries.size()];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = entries.get(i);
+        return new TitleSuggestIndex(catalog, norm, sorted, rank);
+    }
+
+    /**
+     * @return up to k ordinals whose title has a word starting with the prefix, best-rated first
+     */
+    public int[] suggest(String prefix, int k) {
+        String p = TitleNgramIndex.normalize(prefix).strip();
+        if (p.isEmpty() || k <= 0 || suffixes.length == 0) return new int[0];
+        k = Math.min(k, MAX_K);
+
+        if (p.length() <= MEMO_PREFIX_LENGTH && isAsciiAlnum(p)) {
+            int[] all = memo.computeIfAbsent(p, key -> topK(key, MAX_K));
+            return all.length <= k ? all : Arrays.copyOf(all, k);
+        }
+        return topK(p, k);
+    }
+
+    private int[] topK(String p, int k) {
+        int[] best = new int[k]; // ordinals, ascending by rank
+        int n = 0;
+        for (int i = lowerBound(p); i < suffixes.length; i++) {
+            int ord = (int) (suffixes[i] >>> 32);
+            int off = (int) suffixes[i];
+            if (!normalized[ord].startsWith(p, off)) break;
+            if (n == k && rank[ord] >= rank[best[n - 1]]) continue;
+            if (contains(best, n, ord)) continue;
+
+            int j = n == k ? n - 1 : n++;
+            while (j > 0 && rank[best[j - 1]] > rank[ord]) {
+                best[j] = best[j - 1];
+                j--;
+            }
+            best[j] = ord;
+        }
+        return Arrays.copyOf(best, n);
+    }
+
+    private int lowerBound(String p) {
+        int lo = 0, hi = suffixes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long e = suffixes[mid];
+            String t = normalized[(int) (e >>> 32)];
+            if (compareRegion(t, (int) e, p) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static boolean isAsciiAlnum(String p) {
+        for (int i = 0; i < p.length(); i++) {
+            char ch = p.charAt(i);
+            if ((ch < 'a' || ch > 'z') && (ch < '0' || ch > '9')) return false;
+        }
+        return true;
+    }
+
+    private static boolean contains(int[] a, int n, int v) {
+        for (int i = 0; i < n; i++) if (a[i] == v) return true;
+        return false;
+    }
+
+    // compares t.substring(off) against p, treating "p is a prefix" as equal-or-greater for the lower bound
+    private static int compareRegion(String t, int off, String p) {
+        int len = Math.min(t.length() - off, p.length());
+        for (int i = 0; i < len; i++) {
+            int d = t.charAt(off + i) - p.charAt(i);
+            if (d != 0) return d;
+        }
+        return (t.length() - off) - p.length() < 0 ? -1 : 0;
+    }
+
+    private static int compareSuffixes(String[] norm, long a, long b) {
+        String ta = norm[(int) (a >>> 32)], tb = norm[(int) (b >>> 32)];
+        int oa = (int) a, ob = (int) b;
+        int len = Math.min(ta.length() - oa, tb.length() - ob);
+        for (int i = 0; i < len; i++) {
+            int d = ta.charAt(oa + i) - tb.charAt(ob + i);
+            if (d != 0) return d;
+        }
+        return (ta.length() - oa) - (tb.length() - ob);
+    }
+}
@@ -0,0 +1,213 @@
+package search;
+
+import catalog.MovieCatalog;
+import utils.SqlSortUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The unfiltered "top movies" ordering for every {@link SqlSortUtils#allOrderKeys() order key},
+ * kept as int arrays of catalog ordinals. A page is an array slice; MySQL only hydrates the ids.
+ * The sort itself is done by MySQL at build time so ties and collation match the SQL path exactly.
+ * <p>
+ * A seek cursor is only resolved here while its movie still has the sort values the cursor
+ * recorded; once the rating or title moved, the movie's position no longer marks where the
+ * previous page ended and the caller falls back to the SQL keyset query.
+ */
+public final class TopRankings {
+    private static final String RANK_SQL = "SELECT m.id, r.rating FROM movies m JOIN ratings r ON r.movie_id = m.id ORDER BY %s";
+    private static final String FINGERPRINT_SQL =
+            "SELECT COUNT(*), COALESCE(SUM(rating), 0), COALESCE(SUM(vote_count), 0) FROM ratings";
+
+    public static final TopRankings EMPTY = new TopRankings(MovieCatalog.EMPTY, new String[0], Map.of(), "");
+
+    private record Ranking(int[] ordinals, int[] positionOf) {
+    }
+
+    private final MovieCatalog catalog;
+    private final String[] ratings; // per ordinal, as the driver renders it in a page query; null when unrated
+    private final Map<String, Ranking> byOrderKey;
+    private final String fingerprint;
+
+    private TopRankings(MovieCatalog catalog, String[] ratings, Map<String, Ranking> byOrderKey, String fingerprint) {
+        this.catalog = catalog;
+        this.ratings = ratings;
+        this.byOrderKey = byOrderKey;
+        this.fingerprint = fingerprint;
+    }
+
+    public static TopRankings load(Connection c, MovieCatalog catalog) throws SQLException {
+        String fp = fingerprint(c);
+        String[] ratings = new String[catalog.size()];
+        Map<String, Ranking> byKey = new HashMap<>();
+        for (String key : SqlSortUtils.allOrderKeys()) {
+            byKey.put(key, rank(c, catalog, key, ratings));
+        }
+        return new TopRankings(catalog, ratings, byKey, fp);
+    }
+
+    /**
+     * Cheap check run on every refresh tick; rankings are rebuilt only when ratings changed.
+     */
+    public boolean isStale(Connection c) throws SQLException {
+        return byOrderKey.isEmpty() || !fingerprint.equals(fingerprint(c));
+    }
+
+    /**
+     * @return the movie ids of the page, in order, or null when this key has no ranking
+     * (not loaded yet) or the cursor cannot be placed in it
+     */
+    public String[] page(String orderKey, Page p) {
+        Ranking r = byOrderKey.get(orderKey);
+        if (r == null) return null;
+
+        int from = p.offset();
+        if (p.isSeek()) {
+            from = seekStart(orderKey, r, p.after());
+            if (from < 0) return null;
+        }
+
+        int to = Math.min(r.ordinals.length, from + p.limit());
+        if (from >= to) return new String[0];
+        String[] ids = new String[to - from];
+        for (int i = from; i < to; i++) {
+            ids[i - from] = catalog.id(r.ordinals[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Like {@link #page(String, Page)} but only over movies in {@code filter}, skipping
+     * {@code offset} matches. A dense filter is answered by walking the ranking from the start
+     * (or the seek position); a sparse one, or a deep offset, by sorting the filter's members
+     * by their position, whichever touches fewer entries. Returns null when the ranking is
+     * missing or the cursor cannot be placed in it.
+     */
+    public String[] page(String orderKey, Page p, CompactBitmap filter) {
+        Ranking r = byOrderKey.get(orderKey);
+        if (r == null) return null;
+
+        int from = 0;
+        int skip = p.offset();
+        if (p.isSeek()) {
+            from = seekStart(orderKey, r, p.after());
+            if (from < 0) return null;
+            skip = 0;
+        }
+
+        int members = filter.cardinality();
+        if (members == 0) return new String[0];
+        // the walk meets a match about every n / members entries; sorting costs members * log2(members)
+        long walk = ((long) skip + p.limit()) * (r.ordinals.length - from) / members;
+        long sort = (long) members * (32 - Integer.numberOfLeadingZeros(members));
+        if (sort < walk) return pageBySort(r, from, skip, p.limit(), filter);
+
+        List<String> ids = new ArrayList<>(Math.min(p.limit(), members));
+        for (int i = from; i < r.ordinals.length && ids.size() < p.limit(); i++) {
+            int ord = r.ordinals[i];
+            if (!filter.contains(ord)) continue;
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            ids.add(catalog.id(ord));
+        }
+        return ids.toArray(new String[0]);
+    }
+
+    // the filter's members at or after position from, in ranking order
+    private String[] pageBySort(Ranking r, int from, int skip, int limit, CompactBitmap filter) {
+        int[] positions = new int[filter.cardinality()];
+        int[] n = {0};
+        filter.forEach(ord -> {
+            int pos = ord < r.positionOf.length ? r.positionOf[ord] : -1;
+            if (pos >= from) positions[n[0]++] = pos;
+        });
+        Arrays.sort(positions, 0, n[0]);
+
+        int start = Math.min(skip, n[0]);
+        int end = Math.min(n[0], start + limit);
+        String[] ids = new String[end - start];
+        for (int i = start; i < end; i++) {
+            ids[i - start] = catalog.id(r.ordinals[positions[i]]);
+        }
+        return ids;
+    }
+
+    /**
+     * Rank of each catalog ordinal under the order key (-1 when unrated), or null if not loaded.
+     */
+    public int[] positions(String orderKey) {
+        Ranking r = byOrderKey.get(orderKey);
+        return r == null ? null : r.positionOf;
+    }
+
+    public MovieCatalog catalog() {
+        return catalog;
+    }
+
+    /**
+     * The same rankings over a catalog that {@link MovieCatalog#refresh} extended. The added
+     * movies are left unrated: a movie that gained a rating changes the ratings fingerprint,
+     * so {@link #isStale} rebuilds the rankings anyway.
+     */
+    public TopRankings extend(MovieCatalog newer) {
+        if (newer == catalog) return this;
+        int n = newer.size();
+        if (n < catalog.size()) throw new IllegalArgumentException("Not an extension of this catalog");
+        Map<String, Ranking> byKey = new HashMap<>();
+        for (Map.Entry<String, Ranking> e : byOrderKey.entrySet()) {
+            int[] positionOf = Arrays.copyOf(e.getValue().positionOf, n);
+            Arrays.fill(positionOf, e.getValue().positionOf.length, n, -1);
+            byKey.put(e.getKey(), new Ranking(e.getValue().ordinals, positionOf));
+        }
+        return new TopRankings(newer, Arrays.copyOf(ratings, n), byKey, fingerprint);
+    }
+
+    /**
+     * Position right after the cursor's movie, or -1 when the movie is unknown or its sort
+     * values differ from the ones the cursor recorded.
+     */
+    private int seekStart(String orderKey, Ranking r, SeekCursor after) {
+        int ord = catalog.ordinalOf(after.id());
+        if (ord < 0 || ord >= r.positionOf.length || r.positionOf[ord] < 0) return -1;
+        SeekCursor here = SeekCursor.after(orderKey, ratings[ord], catalog.title(ord), after.id());
+        return here.equals(after) ? r.positionOf[ord] + 1 : -1;
+    }
+
+    // also records each movie's rating into ratings; every order key reads the same values
+    private static Ranking rank(Connection c, MovieCatalog catalog, String orderKey, String[] ratings) throws SQLException {
+        int[] ordinals = new int[catalog.size()];
+        int[] positionOf = new int[catalog.size()];
+        Arrays.fill(positionOf, -1);
+        int n = 0;
+        try (PreparedStatement ps = c.prepareStatement(String.format(RANK_SQL, orderKey));
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int ord = catalog.ordinalOf(rs.getString(1));
+                if (ord < 0) continue; // added after the catalog snapshot; picked up on next rebuild
+                if (n == ordinals.length) ordinals = Arrays.copyOf(ordinals, n * 2 + 1);
+                positionOf[ord] = n;
+                ordinals[n++] = ord;
+                if (ratings[ord] == null) ratings[ord] = rs.getString(2);
+            }
+        }
+        return new Ranking(Arrays.copyOf(ordinals, n), positionOf);
+    }
+
+    private static String fingerprint(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(FINGERPRINT_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getString(1) + "/" + rs.getString(2) + "/" + rs.getString(3);
+        }
+    }
+}
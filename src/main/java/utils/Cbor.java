@@ -0,0 +1,172 @@
+package utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * CBOR (RFC 8949) form of our JSON responses, for clients that send {@code Accept: application/cbor}.
+ * The encoder streams an already rendered JSON body through a {@link JsonReader}, so the field
+ * model is exactly the JSON one: objects become maps, arrays arrays, and numbers integers or
+ * floats. A float is sent as float32 when that prints back as the same decimal (MySQL FLOAT
+ * ratings are float32 to begin with), else as float64.
+ */
+public final class Cbor {
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    private Cbor() {
+    }
+
+    /**
+     * True when the Accept header names application/cbor with a non-zero q value that is at
+     * least the q of JSON (the most specific of application/json, application/*, *&#47;*). A
+     * client that only sends wildcards, or ranks JSON higher, keeps getting JSON.
+     */
+    public static boolean accepts(HttpServletRequest request) {
+        String accept = request.getHeader("Accept");
+        if (accept == null) return false;
+        double cbor = -1;
+        double json = 0;
+        int jsonSpecificity = -1;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) q = parseQ(param.substring(2));
+            }
+            int specificity = switch (type) {
+                case "application/json" -> 2;
+                case "application/*" -> 1;
+                case "*/*" -> 0;
+                default -> -1;
+            };
+            if (type.equals(CONTENT_TYPE)) {
+                cbor = Math.max(cbor, q);
+            } else if (specificity > jsonSpecificity) {
+                json = q;
+                jsonSpecificity = specificity;
+            }
+        }
+        return cbor > 0 && cbor >= json;
+    }
+
+    /**
+     * Switches the response to CBOR. The servlets choose UTF-8 up front for their JSON bodies;
+     * that charset is cleared first, or Tomcat would send {@code application/cbor;charset=UTF-8}
+     * for a binary body.
+     */
+    public static void setContentType(HttpServletResponse response) {
+        response.setCharacterEncoding((String) null);
+        response.setContentType(CONTENT_TYPE);
+    }
+
+    private static double parseQ(String q) {
+        try {
+            return Double.parseDouble(q.trim());
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    public static byte[] fromJson(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonReader r = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8))) {
+            while (true) {
+                JsonToken token = r.peek();
+                switch (token) {
+                    // containers use indefinite length, so nothing has to be counted ahead
+                    case BEGIN_ARRAY -> {
+                        r.beginArray();
+                        out.write(0x9f);
+                    }
+                    case END_ARRAY -> {
+                        r.endArray();
+                        out.write(0xff);
+                    }
+                    case BEGIN_OBJECT -> {
+                        r.beginObject();
+                        out.write(0xbf);
+                    }
+                    case END_OBJECT -> {
+                        r.endObject();
+                        out.write(0xff);
+                    }
+                    case NAME -> writeString(out, r.nextName());
+                    case STRING -> writeString(out, r.nextString());
+                    case NUMBER -> writeNumber(out, r.nextString());
+                    case BOOLEAN -> out.write(r.nextBoolean() ? 0xf5 : 0xf4);
+                    case NULL -> {
+                        r.nextNull();
+                        out.write(0xf6);
+                    }
+                    case END_DOCUMENT -> {
+                        return out.toByteArray();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeHead(out, 3, utf8.length);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    private static void writeNumber(ByteArrayOutputStream out, String n) {
+        if (n.indexOf('.') < 0 && n.indexOf('e') < 0 && n.indexOf('E') < 0) {
+            try {
+                long v = Long.parseLong(n);
+                if (v >= 0) writeHead(out, 0, v);
+                else writeHead(out, 1, -1 - v);
+                return;
+            } catch (NumberFormatException e) {
+                // beyond long: fall through to a float
+            }
+        }
+        double d = Double.parseDouble(n);
+        float f = (float) d;
+        if (Double.parseDouble(Float.toString(f)) == d) {
+            out.write(0xfa);
+            writeBits(out, Float.floatToIntBits(f), 4);
+        } else {
+            out.write(0xfb);
+            writeBits(out, Double.doubleToLongBits(d), 8);
+        }
+    }
+
+    private static void writeHead(ByteArrayOutputStream out, int major, long value) {
+        int type = major << 5;
+        if (value < 24) {
+            out.write(type | (int) value);
+        } else if (value <= 0xff) {
+            out.write(type | 24);
+            writeBits(out, value, 1);
+        } else if (value <= 0xffff) {
+            out.write(type | 25);
+            writeBits(out, value, 2);
+        } else if (value <= 0xffffffffL) {
+            out.write(type | 26);
+            writeBits(out, value, 4);
+        } else {
+            out.write(type | 27);
+            writeBits(out, value, 8);
+        }
+    }
+
+    private static void writeBits(ByteArrayOutputStream out, long bits, int bytes) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift) & 0xff);
+        }
+    }
+}
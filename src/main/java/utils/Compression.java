@@ -0,0 +1,105 @@
+package utils;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response compression shared by {@code CompressionFilter} and the caches that keep a gzip copy
+ * of hot bodies. Threshold and level come from the filter's init params.
+ */
+public final class Compression {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static volatile int threshold = 1024;
+    private static volatile int level = 6;
+
+    private Compression() {
+    }
+
+    public static void configure(int minBytes, int deflaterLevel) {
+        threshold = Math.max(0, minBytes);
+        level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, deflaterLevel));
+    }
+
+    public static int threshold() {
+        return threshold;
+    }
+
+    /**
+     * @return "gzip" or "deflate" from Accept-Encoding (gzip preferred), or null for identity
+     */
+    public static String negotiate(HttpServletRequest request) {
+        String accept = request.getHeader("Accept-Encoding");
+        if (accept == null) return null;
+        boolean deflate = false;
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(java.util.Locale.ROOT);
+            if (parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?")) continue;
+            if (name.equals(GZIP) || name.equals("*")) return GZIP;
+            if (name.equals(DEFLATE)) deflate = true;
+        }
+        return deflate ? DEFLATE : null;
+    }
+
+    /**
+     * gzip copy for a cache entry, or null when the body is below the threshold.
+     */
+    public static byte[] precompress(byte[] body) {
+        return body.length < threshold ? null : compress(body, GZIP);
+    }
+
+    public static byte[] compress(byte[] body, String encoding) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        int lvl = level;
+        if (GZIP.equals(encoding)) {
+            try (GZIPOutputStream z = new LeveledGzipOutputStream(out, lvl)) {
+                z.write(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // in-memory streams do not throw
+            }
+        } else {
+            Deflater deflater = new Deflater(lvl);
+            try (DeflaterOutputStream z = new DeflaterOutputStream(out, deflater)) {
+                z.write(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                deflater.end(); // a caller-supplied Deflater is not released by close()
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the cached gzip copy when there is one and the client takes gzip, else the plain body.
+     * A response that already carries Content-Encoding is passed through by the filter untouched.
+     */
+    public static void write(HttpServletRequest request, HttpServletResponse response, byte[] body, byte[] gzipBody)
+            throws IOException {
+        if (gzipBody != null && GZIP.equals(negotiate(request))) {
+            response.setHeader("Content-Encoding", GZIP);
+            response.addHeader("Vary", "Accept-Encoding");
+            body = gzipBody;
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    // GZIPOutputStream has no level argument; its Deflater is only reachable from a subclass
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+}
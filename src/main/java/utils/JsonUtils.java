@@ -6,6 +6,8 @@ import com.google.gson.internal.Streams;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.google.gson.JsonArray;
 
@@ -24,13 +26,41 @@ public final class JsonUtils {
         }
     }
 
+    // -Djson.validateRaw=true parses pass-through JSON before writing it, to catch a bad query early
+    private static final boolean VALIDATE_RAW = Boolean.getBoolean("json.validateRaw");
+
+    /**
+     * Writes a JSON array MySQL already built (JSON_ARRAYAGG) straight into the output with
+     * {@link JsonWriter#jsonValue}, without building a Gson tree. Anything that does not look
+     * like an array goes through {@link #writeParsedJsonArrayOrEmpty} instead.
+     */
     public static void writeJsonArrayOrEmpty(JsonWriter jw, String json) throws IOException {
+        if (json == null || json.isBlank()) {
+            jw.beginArray().endArray();
+            return;
+        }
+        if (!looksLikeArray(json) || (VALIDATE_RAW && !JsonParser.parseString(json).isJsonArray())) {
+            writeParsedJsonArrayOrEmpty(jw, json);
+            return;
+        }
+        jw.jsonValue(json);
+    }
+
+    // the previous path: parse into a JsonElement tree and re-serialize it
+    public static void writeParsedJsonArrayOrEmpty(JsonWriter jw, String json) throws IOException {
         JsonElement element = (json == null || json.isBlank())
                 ? new JsonArray()
                 : JsonParser.parseString(json);
         Streams.write(element, jw);
     }
 
+    private static boolean looksLikeArray(String json) {
+        int start = 0, end = json.length() - 1;
+        while (start < end && Character.isWhitespace(json.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(json.charAt(end))) end--;
+        return json.charAt(start) == '[' && json.charAt(end) == ']';
+    }
+
     public static int parseIntOrDefault(String s, int def, int min, int max) {
         try {
             int v = Integer.parseInt(s);
@@ -49,4 +79,15 @@ public final class JsonUtils {
             return null;
         }
     }
+
+    // "1, 2,x,3" -> [1, 2, 3]; unparsable entries are skipped like parseNullableInt does
+    public static List<Integer> parseIntList(String csv) {
+        if (csv == null || csv.isBlank()) return List.of();
+        List<Integer> out = new ArrayList<>();
+        for (String part : csv.split(",")) {
+            Integer v = parseNullableInt(part.trim());
+            if (v != null) out.add(v);
+        }
+        return out;
+    }
 }
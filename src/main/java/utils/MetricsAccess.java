@@ -0,0 +1,39 @@
+package utils;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Access rule shared by the {@code /api/metrics/*} endpoints.
+ * <p>
+ * Off unless the context parameter {@code metrics.access} says otherwise: {@code local}
+ * serves loopback clients only, {@code any} serves everyone. Behind a reverse proxy every
+ * request arrives from the proxy's address, so {@code local} is only meaningful when the
+ * container restores the client address (Tomcat's {@code RemoteIpValve}); otherwise keep
+ * it off or block the paths at the proxy.
+ */
+public final class MetricsAccess {
+    private static final String PARAM = "metrics.access";
+
+    private MetricsAccess() {
+    }
+
+    public static boolean allowed(HttpServletRequest request) {
+        String access = request.getServletContext().getInitParameter(PARAM);
+        return switch (access == null ? "off" : access.trim()) {
+            case "any" -> true;
+            case "local" -> isLoopback(request.getRemoteAddr());
+            default -> false;
+        };
+    }
+
+    private static boolean isLoopback(String address) {
+        try {
+            return InetAddress.getByName(address).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
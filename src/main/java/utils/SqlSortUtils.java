@@ -3,6 +3,9 @@ package utils;
 
 import jakarta.servlet.http.HttpServletRequest;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public final class SqlSortUtils {
     private SqlSortUtils() {
     }
@@ -60,6 +63,22 @@ public final class SqlSortUtils {
         return c1 + " " + d1 + ", " + c2 + " " + d2 + ", m.id ASC";
     }
 
+    /**
+     * Every key {@link #buildOrderKey} can return (2 fields x 2 directions x 2 directions).
+     */
+    public static List<String> allOrderKeys() {
+        List<String> keys = new ArrayList<>();
+        for (String o1 : new String[]{"rating", "title"}) {
+            String o2 = "title".equals(o1) ? "rating" : "title";
+            for (String d1 : new String[]{"DESC", "ASC"}) {
+                for (String d2 : new String[]{"ASC", "DESC"}) {
+                    keys.add(colFor(o1) + " " + d1 + ", " + colFor(o2) + " " + d2 + ", m.id ASC");
+                }
+            }
+        }
+        return keys;
+    }
+
     public static String buildOrderBy(HttpServletRequest req) {
         return "ORDER BY " + buildOrderKey(req);
     }
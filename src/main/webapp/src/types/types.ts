@@ -55,6 +55,7 @@ export type CartItem = {
 export type CartResponse = {
     sessionId: string;
     lastAccessTime: string;
+    version?: number;
     cartItems: CartItem[];
     totalPrice: number;
     message?: string;
@@ -0,0 +1,168 @@
+package cart;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many threads updating a few carts through a {@link CartStore} the way the cart servlets do:
+ * take the {@link CartLocks} stripe, load, mutate, save. No update may be lost.
+ */
+class CartConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int OPS_PER_THREAD = 20_000;
+    private static final int CARTS = 16;
+    private static final int MOVIES = 12;
+    private static final int PRICE_CENTS = 1000;
+
+    @Test
+    void quantitiesAddUpAfterParallelUpdates() throws InterruptedException {
+        ShardedMemoryCartStore store = new ShardedMemoryCartStore(4, TimeUnit.HOURS.toMillis(1), 1000);
+        CartLocks locks = new CartLocks(4);
+        String[] cartIds = new String[CARTS];
+        for (int i = 0; i < CARTS; i++) {
+            cartIds[i] = "cart-" + i;
+        }
+        AtomicLong applied = new AtomicLong();
+
+        runConcurrently(() -> {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            long mine = 0;
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                String cartId = cartIds[rnd.nextInt(CARTS)];
+                String movieId = "tt" + rnd.nextInt(MOVIES);
+                int op = rnd.nextInt(10);
+                Lock lock = locks.forCart(cartId);
+                lock.lock();
+                try {
+                    Cart cart = store.load(cartId);
+                    if (cart == null) cart = new Cart();
+                    if (op < 6) {                       // POST: add one copy
+                        cart.add(movieId, movieId, 1, PRICE_CENTS);
+                        mine++;
+                    } else if (op < 9) {                // PATCH: +1 or -1
+                        int delta = op == 8 ? -1 : 1;
+                        if (cart.adjust(movieId, delta) >= 0) mine += delta;
+                    } else {                            // DELETE: drop the line
+                        int before = quantityOf(cart, movieId);
+                        if (cart.remove(movieId)) mine -= before;
+                    }
+                    store.save(cartId, cart);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            applied.addAndGet(mine);
+        });
+
+        long held = 0;
+        for (String cartId : cartIds) {
+            Cart cart = store.load(cartId);
+            if (cart != null) held += cart.totalQuantity();
+        }
+        assertEquals(applied.get(), held);
+    }
+
+    @Test
+    void concurrentConfirmsReserveTheLinesOnce() throws InterruptedException {
+        ShardedMemoryCartStore store = new ShardedMemoryCartStore(1, TimeUnit.HOURS.toMillis(1), 10);
+        Lock lock = new CartLocks(1).forCart("cart");
+        Cart cart = new Cart();
+        cart.add("tt1", "One", 2, PRICE_CENTS);
+        cart.add("tt2", "Two", 1, PRICE_CENTS);
+        store.save("cart", cart);
+        Cart snapshot = cart.copy();
+        AtomicInteger reservations = new AtomicInteger();
+
+        // the reservation step of PaymentConfirmationServlet
+        runConcurrently(() -> {
+            lock.lock();
+            try {
+                Cart stored = store.load("cart");
+                if (stored != null && stored.covers(snapshot)) {
+                    stored.subtract(snapshot);
+                    if (stored.isEmpty()) {
+                        store.remove("cart");
+                    } else {
+                        store.save("cart", stored);
+                    }
+                    reservations.incrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+
+        assertEquals(1, reservations.get());
+        assertNull(store.load("cart"));
+    }
+
+    @Test
+    void restoreGivesBackReservedLines() {
+        Cart cart = new Cart();
+        cart.add("tt1", "One", 2, PRICE_CENTS);
+        Cart reserved = cart.copy();
+        cart.subtract(reserved);
+        cart.add("tt3", "Three", 1, PRICE_CENTS);
+
+        cart.restore(reserved);
+
+        assertTrue(cart.covers(reserved));
+        assertEquals(3, cart.totalQuantity());
+    }
+
+    @Test
+    void overflowingQuantityLeavesTheCartUnchanged() {
+        Cart cart = new Cart();
+        cart.add("tt1", "One", Integer.MAX_VALUE - 1, PRICE_CENTS);
+        long version = cart.version();
+
+        assertThrows(ArithmeticException.class, () -> cart.add("tt1", "One", 2, PRICE_CENTS));
+        assertThrows(ArithmeticException.class, () -> cart.adjust("tt1", 2));
+
+        assertEquals(version, cart.version());
+        assertEquals(Integer.MAX_VALUE - 1, cart.quantity(0));
+        assertEquals(Integer.MAX_VALUE, cart.add("tt1", "One", 1, PRICE_CENTS));
+        assertTrue(cart.totalCents() > 0);
+    }
+
+    private static int quantityOf(Cart cart, String movieId) {
+        for (int i = 0; i < cart.size(); i++) {
+            if (cart.id(i).equals(movieId)) return cart.quantity(i);
+        }
+        return 0;
+    }
+
+    private static void runConcurrently(Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,129 @@
+package performance;
+
+import cart.Cart;
+import cart.CartLocks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Hammers {@link Cart}s from many threads the way {@code CartServlet} does: look the cart up in
+ * the session (creating it if needed), add or increase a line, and read the total, all in one
+ * critical section. Each session is shared by every thread, like tabs of one browser firing in
+ * parallel.
+ * <p>
+ * Every applied increment is counted. At the end, the quantities left in the carts must add up
+ * to that count, or updates were lost. Modes:
+ * <ul>
+ *   <li>{@code unguarded}: no locking (the old servlet behaviour)</li>
+ *   <li>{@code global}: one lock for every cart</li>
+ *   <li>{@code striped}: {@link CartLocks} striped by session id</li>
+ * </ul>
+ * This is a throughput harness; {@code cart.CartConcurrencyTest} is the pass/fail check run by
+ * {@code mvn test}. Run after {@code mvn test-compile}:
+ * {@code java -cp target/classes:target/test-classes:gson.jar:servlet-api.jar performance.CartConcurrencyStress [opsPerThread] [sessions]}
+ */
+public final class CartConcurrencyStress {
+    private static final int MOVIES = 12;
+    private static final int PRICE_CENTS = 1000;
+
+    private static volatile long sink;
+
+    private CartConcurrencyStress() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int opsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+        String[] sessionIds = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            sessionIds[i] = Long.toHexString(ThreadLocalRandom.current().nextLong()).toUpperCase();
+        }
+
+        System.out.printf("%-10s %7s %12s %10s %8s%n", "mode", "threads", "ops/s", "lost", "errors");
+        for (int round = 0; round < 2; round++) { // first round is JIT warm-up
+            boolean report = round == 1;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                run("unguarded", null, sessionIds, threads, opsPerThread, report);
+                run("global", new CartLocks(1), sessionIds, threads, opsPerThread, report);
+                run("striped", new CartLocks(256), sessionIds, threads, opsPerThread, report);
+            }
+        }
+    }
+
+    private static void run(String mode, CartLocks locks, String[] sessionIds, int threads, int opsPerThread,
+                            boolean report) throws InterruptedException {
+        Map<String, Cart> attributes = new ConcurrentHashMap<>();
+        AtomicLong applied = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long mine = 0;
+                long totals = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < opsPerThread; i++) {
+                    String sessionId = sessionIds[rnd.nextInt(sessionIds.length)];
+                    String movieId = "tt" + rnd.nextInt(MOVIES);
+                    int op = rnd.nextInt(10);
+                    Lock lock = locks == null ? null : locks.forCart(sessionId);
+                    if (lock != null) lock.lock();
+                    try {
+                        Cart cart = attributes.get(sessionId);
+                        if (cart == null) {
+                            cart = new Cart();
+                            attributes.put(sessionId, cart);
+                        }
+                        if (op < 7) {
+                            cart.add(movieId, movieId, 1, PRICE_CENTS);
+                            mine++;
+                        } else if (op < 9) {
+                            if (cart.adjust(movieId, 1) > 0) mine++;
+                        } else {
+                            totals += cart.totalCents();
+                        }
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        if (lock != null) lock.unlock();
+                    }
+                }
+                applied.addAndGet(mine);
+                sink += totals;
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        long held = 0;
+        for (Cart cart : attributes.values()) {
+            for (int i = 0; i < cart.size(); i++) {
+                held += cart.quantity(i);
+            }
+        }
+
+        if (report) {
+            double opsPerSec = (double) threads * opsPerThread / (elapsed / 1e9);
+            System.out.printf("%-10s %7d %12.0f %10d %8d%n", mode, threads, opsPerSec, applied.get() - held, errors.get());
+        }
+    }
+}
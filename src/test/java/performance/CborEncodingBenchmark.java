@@ -0,0 +1,92 @@
+package performance;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import utils.Cbor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Size and throughput of the CBOR encoding ({@link Cbor#fromJson}) against plain JSON on a
+ * representative /api/search page (movies with capped star and genre lists).
+ * <p>
+ * Lives with the tests so it is not packaged into the WAR. Run after {@code mvn test-compile}:
+ * {@code java -cp target/classes:target/test-classes:gson.jar performance.CborEncodingBenchmark [movies] [iterations]}
+ */
+public final class CborEncodingBenchmark {
+    private static final String[] GENRES = {"Action", "Comedy", "Drama", "Horror", "Romance", "Sci-Fi", "Thriller"};
+
+    private CborEncodingBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int movies = args.length > 0 ? Integer.parseInt(args[0]) : 25;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        byte[] json = samplePage(movies);
+        byte[] cbor = Cbor.fromJson(json);
+
+        System.out.printf("page of %d movies%n", movies);
+        System.out.printf("  json %7d B   gzip %6d B%n", json.length, gzipped(json));
+        System.out.printf("  cbor %7d B   gzip %6d B%n", cbor.length, gzipped(cbor));
+
+        long sink = 0;
+        for (int round = 0; round < 3; round++) { // first rounds are JIT warm-up
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) sink += Cbor.fromJson(json).length;
+            long encode = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) sink += JsonParser.parseString(new String(json, StandardCharsets.UTF_8)).hashCode();
+            long parse = System.nanoTime() - start;
+
+            if (round == 2) {
+                System.out.printf("  cbor transcode %8.1f us/page (%6.1f MB/s of JSON in)%n",
+                        encode / 1e3 / iterations, json.length * (double) iterations / (encode / 1e9) / 1e6);
+                System.out.printf("  json tree parse %7.1f us/page (client-side reference)%n", parse / 1e3 / iterations);
+            }
+        }
+        System.out.println("  (sink " + sink + ")");
+    }
+
+    // same shape MovieJsonWriter produces for a result page
+    private static byte[] samplePage(int movies) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonWriter jw = new JsonWriter(out);
+        jw.beginArray();
+        for (int m = 0; m < movies; m++) {
+            jw.beginObject();
+            jw.name("id").value(String.format("tt%07d", 100_000 + m * 37));
+            jw.name("title").value("Sample Movie Title " + m);
+            jw.name("director").value("Director Name " + (m % 11));
+            jw.name("year").value(1980 + m % 40);
+            jw.name("rating").value(Float.valueOf(5.0f + (m % 50) / 10f));
+            jw.name("vote_count").value(1_000 + m * 113);
+            jw.name("stars").beginArray();
+            for (int s = 0; s < 3; s++) {
+                jw.beginObject().name("id").value(String.format("nm%07d", m * 7 + s)).name("name").value("Star Person " + s).endObject();
+            }
+            jw.endArray();
+            jw.name("genres").beginArray();
+            for (int g = 0; g < 3; g++) {
+                jw.beginObject().name("id").value((m + g) % GENRES.length + 1).name("name").value(GENRES[(m + g) % GENRES.length]).endObject();
+            }
+            jw.endArray();
+            jw.endObject();
+        }
+        jw.endArray();
+        jw.flush();
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int gzipped(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(body);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,63 @@
+package performance;
+
+import com.google.gson.stream.JsonWriter;
+import utils.JsonUtils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares {@link JsonUtils#writeJsonArrayOrEmpty} (raw pass-through) with
+ * {@link JsonUtils#writeParsedJsonArrayOrEmpty} (parse + re-serialize) on a typical
+ * JSON_ARRAYAGG stars value. Reports ns/op and bytes allocated per op.
+ * <p>
+ * Lives with the tests so it is not packaged into the WAR. Run after {@code mvn test-compile}:
+ * {@code java -cp target/classes:target/test-classes:gson.jar performance.JsonPassThroughBenchmark [iterations]}
+ */
+public final class JsonPassThroughBenchmark {
+    private static final String STARS = "[{\"id\": \"nm0000158\", \"name\": \"Tom Hanks\"}, "
+            + "{\"id\": \"nm0000705\", \"name\": \"Robin Wright\"}, "
+            + "{\"id\": \"nm0000641\", \"name\": \"Gary Sinise\"}, "
+            + "{\"id\": \"nm0000398\", \"name\": \"Sally Field\"}, "
+            + "{\"id\": \"nm0506405\", \"name\": \"Mykelti Williamson\"}]";
+
+    private interface Writer {
+        void write(JsonWriter jw, String json) throws IOException;
+    }
+
+    private JsonPassThroughBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        for (int round = 0; round < 3; round++) { // first rounds are JIT warm-up
+            boolean report = round == 2;
+            run("parsed", JsonUtils::writeParsedJsonArrayOrEmpty, iterations, report);
+            run("pass-through", JsonUtils::writeJsonArrayOrEmpty, iterations, report);
+        }
+    }
+
+    private static void run(String name, Writer writer, int iterations, boolean report) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long sink = 0;
+
+        long allocStart = threads.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            StringWriter out = new StringWriter(256);
+            JsonWriter jw = new JsonWriter(out);
+            writer.write(jw, STARS);
+            jw.flush();
+            sink += out.getBuffer().length();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(tid) - allocStart;
+
+        if (report) {
+            System.out.printf("%-13s %8.1f ns/op %8d B/op  (sink %d)%n",
+                    name, (double) elapsed / iterations, allocated / iterations, sink);
+        }
+    }
+}
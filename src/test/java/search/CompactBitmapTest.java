@@ -0,0 +1,123 @@
+package search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link CompactBitmap} against {@link BitSet} on random sets whose chunks sit on either side
+ * of the 4096-value array/bitmap boundary, so and/or cover every container pairing and the
+ * conversions in both directions.
+ */
+class CompactBitmapTest {
+    private static final Random PROBES = new Random(11);
+    private static final int[] CHUNK_SIZES = {1, 2, 100, 2048, 4095, 4096, 4097, 6000, 40_000, 65_536};
+
+    @Test
+    void matchesBitSetOnRandomSets() {
+        Random rnd = new Random(7);
+        for (int round = 0; round < 300; round++) {
+            BitSet a = randomSet(rnd);
+            BitSet b = randomSet(rnd);
+            CompactBitmap ca = bitmapOf(a, rnd);
+            CompactBitmap cb = bitmapOf(b, rnd);
+            assertSame(a, ca);
+            assertSame(b, cb);
+
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            assertSame(and, ca.and(cb));
+            assertEquals(and.cardinality(), ca.andCardinality(cb));
+            assertEquals(and.cardinality(), cb.andCardinality(ca));
+
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            assertSame(or, ca.or(cb));
+            assertSame(or, cb.or(ca));
+
+            // a result that converted containers must combine correctly again
+            assertSame(and, ca.or(cb).and(ca).and(cb));
+        }
+    }
+
+    @Test
+    void emptyAndEdgeValues() {
+        CompactBitmap empty = CompactBitmap.of(new int[0]);
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.and(CompactBitmap.EMPTY).cardinality());
+        assertEquals(0, CompactBitmap.EMPTY.or(empty).cardinality());
+
+        int[] edges = {0, 65_535, 65_536, 131_071, Integer.MAX_VALUE};
+        CompactBitmap b = CompactBitmap.of(new int[]{Integer.MAX_VALUE, 65_536, 0, 131_071, 65_535, 0});
+        assertArrayEquals(edges, b.toArray());
+        for (int v : edges) assertTrue(b.contains(v));
+        assertFalse(b.contains(1));
+        assertFalse(b.contains(-1));
+        assertFalse(b.contains(Integer.MIN_VALUE));
+    }
+
+    @Test
+    void usesOnlyTheGivenPrefixOfTheArray() {
+        CompactBitmap b = CompactBitmap.of(new int[]{5, 3, 5, 99}, 3);
+        assertArrayEquals(new int[]{3, 5}, b.toArray());
+    }
+
+    // up to four chunks, each with one of CHUNK_SIZES distinct values
+    private static BitSet randomSet(Random rnd) {
+        BitSet set = new BitSet();
+        int chunks = rnd.nextInt(5);
+        for (int c = 0; c < chunks; c++) {
+            int base = rnd.nextInt(6) << 16;
+            int free = 65_536 - set.get(base, base + 65_536).cardinality(); // base may repeat
+            int size = Math.min(free, CHUNK_SIZES[rnd.nextInt(CHUNK_SIZES.length)]);
+            if (size == free) {
+                set.set(base, base + 65_536);
+                continue;
+            }
+            int added = 0;
+            while (added < size) {
+                int v = base + rnd.nextInt(65_536);
+                if (!set.get(v)) {
+                    set.set(v);
+                    added++;
+                }
+            }
+        }
+        return set;
+    }
+
+    // shuffled, with some duplicates, as Members hands values over
+    private static CompactBitmap bitmapOf(BitSet set, Random rnd) {
+        List<Integer> values = new ArrayList<>(set.cardinality() + 16);
+        set.stream().forEach(values::add);
+        for (int i = 0; i < 16 && !set.isEmpty(); i++) values.add(values.get(rnd.nextInt(values.size())));
+        Collections.shuffle(values, rnd);
+        int[] raw = new int[values.size() + 3];
+        for (int i = 0; i < values.size(); i++) raw[i] = values.get(i);
+        raw[values.size()] = 1 << 30; // past length, must be ignored
+        return CompactBitmap.of(raw, values.size());
+    }
+
+    private static void assertSame(BitSet expected, CompactBitmap actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        int[] visited = new int[actual.cardinality()];
+        int[] n = {0};
+        actual.forEach(v -> visited[n[0]++] = v);
+        assertArrayEquals(expected.stream().toArray(), visited); // ascending, no duplicates
+        assertArrayEquals(visited, actual.toArray());
+        for (int i = 0; i < 50; i++) {
+            int probe = PROBES.nextInt(6 << 16);
+            assertEquals(expected.get(probe), actual.contains(probe));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package search;
+
+import org.junit.jupiter.api.Test;
+import utils.SqlSortUtils;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cursor tokens round trip for every order key, and anything else a client can send fails with
+ * the {@link IllegalArgumentException} the servlets answer with 400 INVALID_CURSOR.
+ */
+class SeekCursorTest {
+    private static final String TITLE = "L'Été \"à\" 水, part 2";
+
+    @Test
+    void encodeDecodeRoundTripsForEveryOrderKey() {
+        for (String orderKey : SqlSortUtils.allOrderKeys()) {
+            SeekCursor c = SeekCursor.after(orderKey, "7.7", TITLE, "tt0000042");
+            String token = c.encode();
+            assertTrue(token.matches("[A-Za-z0-9_-]+"), token); // safe in a query string unescaped
+            assertEquals(c, SeekCursor.decode(token, orderKey));
+        }
+    }
+
+    @Test
+    void keysFollowTheOrderKeyColumns() {
+        SeekCursor byRating = SeekCursor.after("r.rating DESC, m.title ASC, m.id ASC", "7.7", TITLE, "tt1");
+        assertEquals("7.7", byRating.key1());
+        assertEquals(TITLE, byRating.key2());
+        SeekCursor byTitle = SeekCursor.after("m.title ASC, r.rating DESC, m.id ASC", "7.7", TITLE, "tt1");
+        assertEquals(TITLE, byTitle.key1());
+        assertEquals("7.7", byTitle.key2());
+    }
+
+    @Test
+    void rejectsACursorIssuedForAnotherOrdering() {
+        List<String> keys = SqlSortUtils.allOrderKeys();
+        for (String issued : keys) {
+            String token = SeekCursor.after(issued, "7.7", TITLE, "tt1").encode();
+            for (String requested : keys) {
+                if (requested.equals(issued)) continue;
+                IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                        () -> SeekCursor.decode(token, requested));
+                assertEquals("Cursor does not match the requested sort order", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        String orderKey = SqlSortUtils.allOrderKeys().get(0);
+        int hash = orderKey.hashCode();
+        List<String> bad = new ArrayList<>(List.of(
+                "",
+                "!!!",
+                "a",                                 // not a whole base64 group
+                "eyJh+/==",                          // standard, not URL-safe, alphabet
+                "été"));
+        for (String json : new String[]{
+                "not json",
+                "{\"a\":1}",
+                "\"tt1\"",
+                "[]",
+                "[" + hash + ",\"7.7\",\"t\"]",                 // too short
+                "[" + hash + ",null,\"t\",\"tt1\"]",
+                "[" + hash + ",\"7.7\",[],\"tt1\"]",
+                "[\"x\",\"7.7\",\"t\",\"tt1\"]",
+                "[" + hash + ",\"7.7\",\"t\",\"tt1\""}) {      // truncated
+            bad.add(base64(json));
+        }
+        for (String token : bad) {
+            assertThrows(IllegalArgumentException.class, () -> SeekCursor.decode(token, orderKey), token);
+        }
+    }
+
+    @Test
+    void tamperedTokensFailAsIllegalArgument() {
+        String orderKey = SqlSortUtils.allOrderKeys().get(0);
+        String token = SeekCursor.after(orderKey, "7.7", TITLE, "tt0000042").encode();
+        // every edit either still decodes (a valid cursor for this ordering) or is the 400 path;
+        // any other exception would surface as a 500
+        for (int i = 0; i < token.length(); i++) {
+            decodeOrReject(token.substring(0, i), orderKey);
+            for (char ch : "AZaz09-_=+/. ".toCharArray()) {
+                decodeOrReject(token.substring(0, i) + ch + token.substring(i + 1), orderKey);
+                decodeOrReject(token.substring(0, i) + ch + token.substring(i), orderKey);
+            }
+        }
+    }
+
+    @Test
+    void predicateAndBindAgreeOnFivePlaceholders() throws SQLException {
+        Set<String> predicates = new HashSet<>();
+        for (String orderKey : SqlSortUtils.allOrderKeys()) {
+            String sql = SeekCursor.predicate(orderKey);
+            assertEquals(SeekCursor.BIND_COUNT, sql.chars().filter(ch -> ch == '?').count(), sql);
+            predicates.add(sql);
+        }
+        assertEquals(SqlSortUtils.allOrderKeys().size(), predicates.size());
+
+        assertEquals("(r.rating < CAST(? AS FLOAT) OR (r.rating = CAST(? AS FLOAT)"
+                        + " AND (m.title > ? OR (m.title = ? AND m.id > ?))))",
+                SeekCursor.predicate("r.rating DESC, m.title ASC, m.id ASC"));
+
+        String[] bound = new String[SeekCursor.BIND_COUNT + 3];
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("setString")) throw new AssertionError(method.getName());
+                    bound[(Integer) args[0]] = (String) args[1];
+                    return null;
+                });
+        SeekCursor c = SeekCursor.after("r.rating DESC, m.title ASC, m.id ASC", "7.7", TITLE, "tt1");
+        assertEquals(3 + SeekCursor.BIND_COUNT, c.bind(ps, 3));
+        assertEquals(List.of("7.7", "7.7", TITLE, TITLE, "tt1"), Arrays.asList(bound).subList(3, 3 + SeekCursor.BIND_COUNT));
+    }
+
+    private static void decodeOrReject(String token, String orderKey) {
+        try {
+            SeekCursor.decode(token, orderKey);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static String base64(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,210 @@
+package utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Golden bytes (RFC 8949 appendix A where the encodings agree), a decode round trip against
+ * Gson's parse of random documents, and the Accept negotiation.
+ */
+class CborTest {
+
+    @Test
+    void integersUseTheShortestHead() throws IOException {
+        assertEquals("00", cbor("0"));
+        assertEquals("17", cbor("23"));
+        assertEquals("1818", cbor("24"));
+        assertEquals("1864", cbor("100"));
+        assertEquals("1903e8", cbor("1000"));
+        assertEquals("1a000f4240", cbor("1000000"));
+        assertEquals("1b000000e8d4a51000", cbor("1000000000000"));
+        assertEquals("20", cbor("-1"));
+        assertEquals("3863", cbor("-100"));
+        assertEquals("3903e7", cbor("-1000"));
+        assertEquals("3b7fffffffffffffff", cbor("-9223372036854775808"));
+    }
+
+    @Test
+    void floatsAreFloat32WhenTheDecimalSurvives() throws IOException {
+        assertEquals("fa3fc00000", cbor("1.5"));
+        assertEquals("fa3f800000", cbor("1.0"));          // a decimal point keeps it a float
+        assertEquals("fa42c80000", cbor("1e2"));
+        assertEquals("fa40f66666", cbor("7.7"));          // a MySQL FLOAT rating
+        assertEquals("fb400921fb54442d18", cbor("3.141592653589793"));
+        assertEquals("fb43f0000000000000", cbor("18446744073709551616")); // beyond long
+    }
+
+    @Test
+    void stringsAreUtf8() throws IOException {
+        assertEquals("60", cbor("\"\""));
+        assertEquals("6161", cbor("\"a\""));
+        assertEquals("62c3bc", cbor("\"ü\""));
+        assertEquals("63e6b0b4", cbor("\"水\""));
+        assertEquals("64f0908591", cbor("\"𐅑\""));
+        String long24 = "x".repeat(24);
+        String hex24 = HexFormat.of().formatHex(long24.getBytes(StandardCharsets.UTF_8));
+        assertEquals("7818" + hex24, cbor("\"" + long24 + "\""));
+    }
+
+    @Test
+    void containersAreIndefiniteLength() throws IOException {
+        assertEquals("9fff", cbor("[]"));
+        assertEquals("bfff", cbor("{}"));
+        assertEquals("9f019f0203ffff", cbor("[1,[2,3]]"));
+        assertEquals("bf61610161629f0203ffff", cbor("{\"a\":1,\"b\":[2,3]}"));
+        assertEquals("9ff5f4f6ff", cbor("[true,false,null]"));
+    }
+
+    @Test
+    void randomDocumentsRoundTrip() throws IOException {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            JsonElement doc = randomElement(rnd, 0);
+            byte[] encoded = Cbor.fromJson(doc.toString().getBytes(StandardCharsets.UTF_8));
+            ByteBuffer in = ByteBuffer.wrap(encoded);
+            assertEquals(JsonParser.parseString(doc.toString()), decode(in), doc.toString());
+            assertFalse(in.hasRemaining());
+        }
+    }
+
+    @Test
+    void acceptNegotiation() {
+        assertFalse(Cbor.accepts(request(null)));
+        assertTrue(Cbor.accepts(request("application/cbor")));
+        assertTrue(Cbor.accepts(request("APPLICATION/CBOR")));
+        assertFalse(Cbor.accepts(request("application/cbor;q=0")));
+        assertFalse(Cbor.accepts(request("application/cbor; q=0.0, application/json")));
+        assertFalse(Cbor.accepts(request("*/*")));
+        assertFalse(Cbor.accepts(request("application/*")));
+        assertTrue(Cbor.accepts(request("application/json, application/cbor")));
+        assertFalse(Cbor.accepts(request("application/json, application/cbor;q=0.5")));
+        assertTrue(Cbor.accepts(request("application/json;q=0.5, application/cbor;q=0.8")));
+        assertFalse(Cbor.accepts(request("application/cbor;q=0.5, */*")));
+        assertTrue(Cbor.accepts(request("application/cbor;q=0.5, */*;q=0.1")));
+        // the most specific JSON range decides, not the highest
+        assertTrue(Cbor.accepts(request("application/cbor;q=0.5, application/json;q=0.4, */*")));
+        assertFalse(Cbor.accepts(request("application/cbor;q=0.5, application/json, */*;q=0.1")));
+    }
+
+    private static String cbor(String json) throws IOException {
+        return HexFormat.of().formatHex(Cbor.fromJson(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static HttpServletRequest request(String accept) {
+        return (HttpServletRequest) Proxy.newProxyInstance(CborTest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) ->
+                        method.getName().equals("getHeader") && "Accept".equals(args[0]) ? accept : null);
+    }
+
+    private static JsonElement randomElement(Random rnd, int depth) {
+        int kind = rnd.nextInt(depth < 3 ? 8 : 6);
+        return switch (kind) {
+            case 0 -> new JsonPrimitive(rnd.nextInt(7) == 0 ? rnd.nextLong() : rnd.nextInt(70_000) - 35_000);
+            case 1 -> new JsonPrimitive(rnd.nextInt(100) / 10.0 + 0.05);
+            case 2 -> new JsonPrimitive(rnd.nextDouble() * 1e6);
+            case 3 -> new JsonPrimitive(randomString(rnd));
+            case 4 -> new JsonPrimitive(rnd.nextBoolean());
+            case 5 -> JsonNull.INSTANCE;
+            case 6 -> {
+                JsonArray a = new JsonArray();
+                for (int i = rnd.nextInt(5); i > 0; i--) a.add(randomElement(rnd, depth + 1));
+                yield a;
+            }
+            default -> {
+                JsonObject o = new JsonObject();
+                for (int i = rnd.nextInt(5); i > 0; i--) {
+                    o.add(randomString(rnd), randomElement(rnd, depth + 1));
+                }
+                yield o;
+            }
+        };
+    }
+
+    private static String randomString(Random rnd) {
+        String alphabet = "abéü水🎬\"\\\n ";
+        StringBuilder sb = new StringBuilder();
+        for (int i = rnd.nextInt(30); i > 0; i--) {
+            int c = rnd.nextInt(alphabet.length());
+            if (Character.isHighSurrogate(alphabet.charAt(c))) {
+                sb.append(alphabet, c, c + 2);
+            } else if (!Character.isLowSurrogate(alphabet.charAt(c))) {
+                sb.append(alphabet.charAt(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    // just enough of a decoder for what Cbor writes; numbers come back as Gson would parse them
+    private static JsonElement decode(ByteBuffer in) {
+        int initial = in.get() & 0xff;
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (major) {
+            case 0 -> {
+                return new JsonPrimitive(argument(in, info));
+            }
+            case 1 -> {
+                return new JsonPrimitive(-1 - argument(in, info));
+            }
+            case 3 -> {
+                byte[] utf8 = new byte[(int) argument(in, info)];
+                in.get(utf8);
+                return new JsonPrimitive(new String(utf8, StandardCharsets.UTF_8));
+            }
+            case 4 -> {
+                JsonArray a = new JsonArray();
+                while (!atBreak(in)) a.add(decode(in));
+                return a;
+            }
+            case 5 -> {
+                JsonObject o = new JsonObject();
+                while (!atBreak(in)) o.add(decode(in).getAsString(), decode(in));
+                return o;
+            }
+            default -> {
+                return switch (info) {
+                    case 20 -> new JsonPrimitive(false);
+                    case 21 -> new JsonPrimitive(true);
+                    case 22 -> JsonNull.INSTANCE;
+                    case 26 -> JsonParser.parseString(Float.toString(in.getFloat()));
+                    case 27 -> JsonParser.parseString(Double.toString(in.getDouble()));
+                    default -> throw new AssertionError("unexpected simple value " + info);
+                };
+            }
+        }
+    }
+
+    private static long argument(ByteBuffer in, int info) {
+        return switch (info) {
+            case 24 -> in.get() & 0xffL;
+            case 25 -> in.getShort() & 0xffffL;
+            case 26 -> in.getInt() & 0xffffffffL;
+            case 27 -> in.getLong();
+            default -> info;
+        };
+    }
+
+    private static boolean atBreak(ByteBuffer in) {
+        if ((in.get(in.position()) & 0xff) != 0xff) return false;
+        in.get();
+        return true;
+    }
+}